@@ -0,0 +1,108 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Opening and saving documents as JavaFxWorkspace does: DocumentLoader decoding a file
+ * into a new editor, and DocumentSaver writing a snapshot of the document.
+ * <p>
+ * The editor needs the JavaFX toolkit, started headless on Monocle unless another platform is set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DocumentIoBenchmark {
+
+    @Param({"10KB", "1MB", "50MB"})
+    public String size;
+
+    private Path directory;
+    private Path sourceFile;
+    private Path targetFile;
+    private ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document;
+
+    @Setup
+    public void setUp() throws IOException {
+        setDefaultProperty("glass.platform", "Monocle");
+        setDefaultProperty("monocle.platform", "Headless");
+        setDefaultProperty("prism.order", "sw");
+        try {
+            Platform.startup(() -> {
+            });
+        } catch (IllegalStateException e) {
+            // Already started by a previous trial in the same fork
+        }
+
+        String text = BenchmarkDocuments.createJavaSource(BenchmarkDocuments.parseSize(size));
+        document = BenchmarkDocuments.createDocument(text);
+
+        directory = Files.createTempDirectory("DocumentIoBenchmark");
+        sourceFile = directory.resolve("Source.java");
+        targetFile = directory.resolve("Target.java");
+        Files.writeString(sourceFile, text);
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(sourceFile);
+        Files.deleteIfExists(targetFile);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int open() throws Exception {
+        CompletableFuture<CodeArea> editorFuture = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                editorFuture.complete(new CodeArea());
+            } catch (RuntimeException e) {
+                editorFuture.completeExceptionally(e);
+            }
+        });
+        CodeArea editor = editorFuture.get(10, TimeUnit.SECONDS);
+
+        DocumentLoader loader = new DocumentLoader(sourceFile, StandardCharsets.UTF_8, editor);
+        loader.run();
+        // Rethrows the failure of the loader, if any
+        loader.get();
+
+        return editor.getLength();
+    }
+
+    @Benchmark
+    public Path save() throws IOException {
+        DocumentSaver.save(document, targetFile, StandardCharsets.UTF_8);
+        return targetFile;
+    }
+}
@@ -0,0 +1,105 @@
+package com.daicy.javafxeditor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Styling a whole document, as after opening it: lexing alone, building the style spans
+ * of the lexed tokens, and the complete background passes of StyledCodeEditor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HighlightingBenchmark {
+
+    @Param({"10KB", "1MB", "50MB"})
+    public String size;
+
+    @Param({"50", "1000"})
+    public int keywordCount;
+
+    private ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document;
+    private SyntaxLexer lexer;
+
+    /**
+     * The spans of the lexed tokens, including the unstyled gaps between them
+     */
+    private int[] spanLengths;
+    private Collection<String>[] spanStyles;
+    private int spanCount;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        document = BenchmarkDocuments.createDocument(BenchmarkDocuments.createJavaSource(BenchmarkDocuments.parseSize(size)));
+        lexer = new SyntaxLexer(BenchmarkDocuments.createJavaStyles(keywordCount));
+
+        DocumentText text = new DocumentText(document, 0);
+        spanLengths = new int[1024];
+        spanStyles = new Collection[1024];
+        spanCount = 0;
+
+        SyntaxLexer.Scanner scanner = lexer.scanner(text);
+        int latestEnd = 0;
+        while (scanner.next()) {
+            addSpan(Collections.emptyList(), scanner.getStart() - latestEnd);
+            addSpan(Collections.singletonList(scanner.getStyle().getCssClass()), scanner.getEnd() - scanner.getStart());
+            latestEnd = scanner.getEnd();
+        }
+        addSpan(Collections.emptyList(), text.length() - latestEnd);
+    }
+
+    private void addSpan(Collection<String> style, int length) {
+        if (spanCount == spanLengths.length) {
+            spanLengths = Arrays.copyOf(spanLengths, spanCount * 2);
+            spanStyles = Arrays.copyOf(spanStyles, spanCount * 2);
+        }
+        spanLengths[spanCount] = length;
+        spanStyles[spanCount] = style;
+        spanCount++;
+    }
+
+    @Benchmark
+    public int lex() {
+        SyntaxLexer.Scanner scanner = lexer.scanner(new DocumentText(document, 0));
+        int tokenCount = 0;
+        while (scanner.next()) {
+            tokenCount++;
+        }
+        return tokenCount;
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> buildStyleSpans() {
+        StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>(spanCount);
+        for (int i = 0; i < spanCount; i++) {
+            builder.add(spanStyles[i], spanLengths[i]);
+        }
+        return builder.create();
+    }
+
+    @Benchmark
+    public int computeHighlighting() {
+        return StyledCodeEditor.highlightDocument(document, lexer);
+    }
+}
@@ -0,0 +1,37 @@
+package com.daicy.javafxeditor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registering the rules of an editor: addTokens() builds a token set from the keywords,
+ * then the whole lexer is compiled again, as addPattern() does
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyntaxRulesBenchmark {
+
+    @Param({"50", "1000", "10000"})
+    public int keywordCount;
+
+    @Benchmark
+    public SyntaxLexer addTokens() {
+        List<Style> styles = BenchmarkDocuments.createJavaStyles(keywordCount);
+        return new SyntaxLexer(styles);
+    }
+}
@@ -5,6 +5,10 @@ import org.fxmisc.richtext.CodeArea;
 
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
 
@@ -65,6 +69,70 @@ public interface AppStrategy {
      */
     URL getSyntaxCss();
 
+    /**
+     * Computes the command running a source file, as a child process whose working directory
+     * is the directory of the file.
+     *
+     * @param sourceFile The source file, already saved
+     * @return The program and its arguments, or an empty Optional if the file cannot be run
+     */
+    default Optional<List<String>> getRunCommand(File sourceFile) {
+        return Optional.empty();
+    }
+
+    /**
+     * Maximum number of lines retained in the output pane: older lines are discarded.
+     *
+     * @return The maximum number of output lines
+     */
+    default int getMaxOutputLines() {
+        return 10_000;
+    }
+
+    /**
+     * Directory where the edits of unsaved documents are journaled, so that they can be recovered
+     * after a crash.
+     *
+     * @return The recovery directory, or an empty Optional to disable crash recovery
+     */
+    default Optional<Path> getRecoveryDirectory() {
+        return Optional.of(getDataDirectory().resolve("recovery"));
+    }
+
+    /**
+     * File where the open documents are remembered when the editor is closed, so that they are
+     * shown again - already highlighted, if unchanged - on the next launch.
+     *
+     * @return The session file, or an empty Optional to start with a new document every time
+     */
+    default Optional<Path> getSessionFile() {
+        return Optional.of(getDataDirectory().resolve("session.bin"));
+    }
+
+    /**
+     * Directory where the styles of whole documents are cached, so that files already highlighted
+     * once - under the same syntax rules - are not lexed again when reopened.
+     *
+     * @return The cache directory, or an empty Optional to disable the cache
+     */
+    default Optional<Path> getHighlightCacheDirectory() {
+        return Optional.of(getDataDirectory().resolve("highlight-cache"));
+    }
+
+    /**
+     * File where stalls of the FX thread are reported - with its stack and the recent events of the editor -
+     * as they happen; older reports are rotated into files with a numbered suffix.
+     *
+     * @return The diagnostics log, or an empty Optional to disable stall detection
+     */
+    default Optional<Path> getDiagnosticsLogFile() {
+        return Optional.of(getDataDirectory().resolve("diagnostics").resolve("fx-stalls.log"));
+    }
+
+    private Path getDataDirectory() {
+        return Paths.get(System.getProperty("user.home"), "." + getTitle().replaceAll("\\W", ""));
+    }
+
     /**
      * Shows online reference (for example, opens a web page)
      */
@@ -0,0 +1,89 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding shared by the files of the editor.
+ * <p>
+ * Non-negative integers are written as variable-length quantities - 7 bits per byte,
+ * least significant first - so that small values take a single byte; fixed-size values
+ * are big-endian, as read by ByteBuffer.
+ */
+final class BinaryEncoding {
+
+    private BinaryEncoding() {
+    }
+
+    public static void writeVarint(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * @throws IOException if the value is malformed
+     * @throws java.nio.BufferUnderflowException if the value is truncated
+     */
+    public static long readVarint(ByteBuffer input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid number");
+    }
+
+    /**
+     * @throws IOException if the value is malformed or does not fit an int
+     */
+    public static int readVarintAsInt(ByteBuffer input) throws IOException {
+        long value = readVarint(input);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid number: " + value);
+        }
+        return (int) value;
+    }
+
+    public static void writeInt(ByteArrayOutputStream output, int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            output.write(value >>> shift);
+        }
+    }
+
+    public static void writeLong(ByteArrayOutputStream output, long value) {
+        writeInt(output, (int) (value >>> 32));
+        writeInt(output, (int) value);
+    }
+
+    public static void writeBytes(ByteArrayOutputStream output, byte[] bytes) {
+        writeVarint(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    public static byte[] readBytes(ByteBuffer input) throws IOException {
+        int length = readVarintAsInt(input);
+        if (length > input.remaining()) {
+            throw new IOException("Truncated data");
+        }
+
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return bytes;
+    }
+
+    public static void writeString(ByteArrayOutputStream output, String text) {
+        writeBytes(output, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readString(ByteBuffer input) throws IOException {
+        return new String(readBytes(input), StandardCharsets.UTF_8);
+    }
+}
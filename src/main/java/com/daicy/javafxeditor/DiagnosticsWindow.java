@@ -0,0 +1,88 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.layout.GridPane;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+/**
+ * Shows the metrics of the selected document and of the output pane - the values exposed to JMX
+ * clients - refreshed every second while the window is open.
+ */
+public class DiagnosticsWindow extends Stage {
+
+    private static final Duration REFRESH_RATE = Duration.seconds(1);
+
+    /**
+     * Wide enough for the statistics of a timer, so that the window does not need resizing
+     */
+    private static final double VALUE_WIDTH = 380;
+
+    private final Supplier<EditorMetrics> editorMetrics;
+    private final OutputMetrics outputMetrics;
+
+    private final List<Runnable> rowUpdaters = new ArrayList<>();
+    private final GridPane grid = new GridPane();
+
+    /**
+     * @param editorMetrics supplies the metrics of the selected document
+     */
+    public DiagnosticsWindow(Window owner, Supplier<EditorMetrics> editorMetrics, OutputMetrics outputMetrics) {
+        this.editorMetrics = editorMetrics;
+        this.outputMetrics = outputMetrics;
+
+        initOwner(owner);
+        setTitle("Diagnostics");
+
+        grid.setHgap(16);
+        grid.setVgap(4);
+        grid.setPadding(new Insets(12));
+
+        addEditorRow("Document", EditorMetrics::getDocumentName);
+        addEditorRow("Characters", metrics -> String.valueOf(metrics.getDocumentLength()));
+        addEditorRow("Paragraphs", metrics -> String.valueOf(metrics.getParagraphCount()));
+        addEditorRow("Highlight passes", metrics -> metrics.getHighlightPasses().toString());
+        addEditorRow("Highlight passes per second", metrics -> String.format("%.1f", metrics.getHighlightPassesPerSecond()));
+        addEditorRow("Edit to styles applied", metrics -> metrics.getStyleLag().toString());
+        addEditorRow("Styles applied on the FX thread", metrics -> metrics.getStyleApplication().toString());
+        addEditorRow("File opens", metrics -> metrics.getFileOpens().toString());
+        addEditorRow("File saves", metrics -> metrics.getFileSaves().toString());
+        addRow("Output characters per second", () -> String.format("%.0f", outputMetrics.getOutputCharactersPerSecond()));
+        addRow("Output appended on the FX thread", () -> outputMetrics.getOutputDeliveries().toString());
+
+        setScene(new Scene(grid));
+
+        Timeline refresher = new Timeline(new KeyFrame(REFRESH_RATE, event -> refresh()));
+        refresher.setCycleCount(Timeline.INDEFINITE);
+        setOnShown(event -> {
+            refresh();
+            refresher.play();
+        });
+        setOnHidden(event -> refresher.stop());
+    }
+
+    private void addEditorRow(String name, Function<EditorMetrics, String> value) {
+        addRow(name, () -> value.apply(editorMetrics.get()));
+    }
+
+    private void addRow(String name, Supplier<String> value) {
+        Label valueLabel = new Label();
+        valueLabel.setMinWidth(VALUE_WIDTH);
+        grid.addRow(rowUpdaters.size(), new Label(name), valueLabel);
+        rowUpdaters.add(() -> valueLabel.setText(value.get()));
+    }
+
+    private void refresh() {
+        rowUpdaters.forEach(Runnable::run);
+    }
+}
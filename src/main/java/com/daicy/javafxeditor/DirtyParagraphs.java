@@ -0,0 +1,90 @@
+package com.daicy.javafxeditor;
+
+/**
+ * Tracks the range of paragraphs whose styling is out of date.
+ * <p>
+ * Paragraph indexes always refer to the current document: every edit reported
+ * via {@link #edit(int, int, int)} shifts the tracked range accordingly.
+ */
+class DirtyParagraphs {
+
+    private int first = -1;
+    private int last = -1;
+
+    /**
+     * Records an edit.
+     *
+     * @param paragraph     the paragraph where the edit starts
+     * @param removedLines  the number of line breaks removed by the edit
+     * @param insertedLines the number of line breaks inserted by the edit
+     */
+    public void edit(int paragraph, int removedLines, int insertedLines) {
+        if (isEmpty()) {
+            first = paragraph;
+            last = paragraph + insertedLines;
+            return;
+        }
+
+        first = Math.min(shift(first, paragraph, removedLines, insertedLines), paragraph);
+        last = Math.max(shift(last, paragraph, removedLines, insertedLines), paragraph + insertedLines);
+    }
+
+    /**
+     * Marks the whole document as dirty
+     *
+     * @param paragraphCount the number of paragraphs in the document
+     */
+    public void markAll(int paragraphCount) {
+        first = 0;
+        last = Math.max(paragraphCount - 1, 0);
+    }
+
+    /**
+     * Marks the paragraphs preceding the given one as clean, while the given one stays dirty
+     *
+     * @param paragraph the first paragraph still dirty
+     */
+    public void cleanUpTo(int paragraph) {
+        first = paragraph;
+        last = Math.max(last, paragraph);
+    }
+
+    public boolean isEmpty() {
+        return first < 0;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getLast() {
+        return last;
+    }
+
+    public void clear() {
+        first = -1;
+        last = -1;
+    }
+
+    /**
+     * Maps a paragraph index of the document preceding an edit to the document following it.
+     * Paragraphs removed by the edit are mapped to the paragraph where the edit starts.
+     *
+     * @param index         the paragraph index before the edit
+     * @param paragraph     the paragraph where the edit starts
+     * @param removedLines  the number of line breaks removed by the edit
+     * @param insertedLines the number of line breaks inserted by the edit
+     * @return the paragraph index after the edit
+     */
+    public static int shift(int index, int paragraph, int removedLines, int insertedLines) {
+        if (index <= paragraph) {
+            return index;
+        }
+
+        if (index <= paragraph + removedLines) {
+            return paragraph;
+        }
+
+        return index + insertedLines - removedLines;
+    }
+}
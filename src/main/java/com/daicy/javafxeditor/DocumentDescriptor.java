@@ -0,0 +1,112 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.util.Optional;
+
+/**
+ * Lightweight state of a document whose editor was released, enough to rebuild the editor later.
+ * <p>
+ * An unmodified document is loaded again from its file; the text of a modified one is retained,
+ * so that it is restored still modified. The undo history itself is not retained:
+ * the rebuilt editor starts a new one.
+ * <p>
+ * The styles of an unmodified document can be retained as well, along with the size and
+ * modification time of the file they were computed for: as long as the file is unchanged,
+ * they are restored instead of lexing the file again.
+ */
+public final class DocumentDescriptor {
+
+    private final File file;
+    private final int caretPosition;
+    private final int topParagraph;
+    private final String unsavedText;
+    private final long fileSize;
+    private final long fileModified;
+    private final HighlightSnapshot highlighting;
+
+    /**
+     * @param file          the file of the document, or null if untitled
+     * @param caretPosition the position of the caret
+     * @param topParagraph  the first visible paragraph
+     * @param unsavedText   the text of the document if modified; null if it matches the file
+     */
+    public DocumentDescriptor(File file, int caretPosition, int topParagraph, String unsavedText) {
+        this(file, caretPosition, topParagraph, unsavedText, -1, 0, null);
+    }
+
+    /**
+     * @param file          the file of the document, or null if untitled
+     * @param caretPosition the position of the caret
+     * @param topParagraph  the first visible paragraph
+     * @param unsavedText   the text of the document if modified; null if it matches the file
+     * @param fileSize      the size of the file as loaded or saved, or -1 if unknown
+     * @param fileModified  the modification time of the file as loaded or saved
+     * @param highlighting  the styles of the unmodified document, or null
+     */
+    public DocumentDescriptor(File file, int caretPosition, int topParagraph, String unsavedText,
+                              long fileSize, long fileModified, HighlightSnapshot highlighting) {
+        this.file = file;
+        this.caretPosition = caretPosition;
+        this.topParagraph = topParagraph;
+        this.unsavedText = unsavedText;
+        this.fileSize = fileSize;
+        this.fileModified = fileModified;
+        this.highlighting = highlighting;
+    }
+
+    /**
+     * @return the descriptor of a file not shown yet
+     */
+    public static DocumentDescriptor of(File file) {
+        return new DocumentDescriptor(file, 0, 0, null);
+    }
+
+    public Optional<File> getFileOptional() {
+        return Optional.ofNullable(file);
+    }
+
+    public int getCaretPosition() {
+        return caretPosition;
+    }
+
+    public int getTopParagraph() {
+        return topParagraph;
+    }
+
+    /**
+     * @return the text of the modified document, or null if the document is unmodified
+     */
+    public String getUnsavedText() {
+        return unsavedText;
+    }
+
+    public boolean isModified() {
+        return unsavedText != null;
+    }
+
+    /**
+     * @return the size of the file as loaded or saved, or -1 if unknown
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getFileModified() {
+        return fileModified;
+    }
+
+    public Optional<HighlightSnapshot> getHighlightingOptional() {
+        return Optional.ofNullable(highlighting);
+    }
+
+    /**
+     * @return the retained styles, provided that the file has not changed since they were computed
+     */
+    public Optional<HighlightSnapshot> getValidHighlightingOptional() {
+        if (highlighting == null || isModified() || file == null
+                || file.length() != fileSize || file.lastModified() != fileModified) {
+            return Optional.empty();
+        }
+        return Optional.of(highlighting);
+    }
+}
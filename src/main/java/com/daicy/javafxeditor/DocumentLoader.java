@@ -0,0 +1,110 @@
+package com.daicy.javafxeditor;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.fxmisc.richtext.CodeArea;
+
+/**
+ * Loads a text file into a code editor, in the background.
+ * <p>
+ * The file is decoded while it is read, and the text is appended to the editor
+ * in large batches, each one waiting for the previous one to be appended:
+ * the editor stays responsive, and the whole text is never held in memory
+ * anywhere but in the editor - not even in its undo history, which is
+ * forgotten after each batch.
+ */
+public class DocumentLoader extends Task<Void> {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int BATCH_SIZE = 1024 * 1024;
+
+    private final Path sourcePath;
+    private final Charset charset;
+    private final CodeArea codeEditor;
+
+    /**
+     * @param sourcePath the file to load
+     * @param charset    the charset of the file; malformed input is replaced, as new String() would do
+     * @param codeEditor the editor, which should be empty; text is appended to it on the FX thread
+     */
+    public DocumentLoader(Path sourcePath, Charset charset, CodeArea codeEditor) {
+        this.sourcePath = sourcePath;
+        this.charset = charset;
+        this.codeEditor = codeEditor;
+    }
+
+    @Override
+    protected Void call() throws Exception {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try (FileChannel channel = FileChannel.open(sourcePath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long readBytes = 0;
+
+            ByteBuffer byteBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            CharBuffer charBuffer = CharBuffer.allocate(BATCH_SIZE);
+
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                if (isCancelled()) {
+                    return null;
+                }
+
+                int read = channel.read(byteBuffer);
+                endOfInput = read < 0;
+                if (read > 0) {
+                    readBytes += read;
+                }
+
+                byteBuffer.flip();
+                while (decoder.decode(byteBuffer, charBuffer, endOfInput).isOverflow()) {
+                    appendBatch(charBuffer);
+                }
+                byteBuffer.compact();
+
+                updateProgress(readBytes, size);
+            }
+
+            while (decoder.flush(charBuffer).isOverflow()) {
+                appendBatch(charBuffer);
+            }
+            appendBatch(charBuffer);
+        }
+
+        return null;
+    }
+
+    private void appendBatch(CharBuffer charBuffer) throws InterruptedException, ExecutionException {
+        charBuffer.flip();
+        String batch = charBuffer.toString();
+        charBuffer.clear();
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        CompletableFuture<Void> appended = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            if (!isCancelled()) {
+                codeEditor.appendText(batch);
+                // Kept as an undoable change, each batch would be merged into a second copy of the text
+                codeEditor.getUndoManager().forgetHistory();
+            }
+            appended.complete(null);
+        });
+        appended.get();
+    }
+}
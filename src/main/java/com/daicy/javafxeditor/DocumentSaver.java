@@ -0,0 +1,137 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.security.SecureRandom;
+import java.util.List;
+
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Writes documents to files without ever leaving a partially written file behind.
+ * <p>
+ * The document is encoded paragraph by paragraph into a temporary file, next to the target;
+ * once the temporary file is flushed to the storage device, it atomically replaces the target.
+ */
+final class DocumentSaver {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private DocumentSaver() {
+    }
+
+    /**
+     * @param document the document to save; it must not change meanwhile, as an immutable snapshot
+     * @param target   the file to create or replace
+     * @param charset  the charset of the file; unmappable characters are replaced
+     * @throws IOException if writing fails, in which case the target is left untouched
+     */
+    public static void save(StyledDocument<?, ?, ?> document, Path target, Charset charset) throws IOException {
+        Path absoluteTarget = target.toAbsolutePath();
+        boolean targetExists = Files.exists(absoluteTarget);
+        if (targetExists) {
+            // Moving onto a symbolic link would replace the link, not the file it points to
+            absoluteTarget = absoluteTarget.toRealPath();
+        }
+
+        Path temporaryFile = createTemporaryFile(absoluteTarget);
+
+        try {
+            if (targetExists) {
+                copyPermissions(absoluteTarget, temporaryFile);
+            }
+
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(document, channel, charset);
+                channel.force(true);
+            }
+
+            try {
+                Files.move(temporaryFile, absoluteTarget, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Encodes the document paragraph by paragraph, at the current position of the channel
+     */
+    static void write(StyledDocument<?, ?, ?> document, FileChannel channel, Charset charset) throws IOException {
+        CharsetEncoder encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        List<? extends Paragraph<?, ?, ?>> paragraphs = document.getParagraphs();
+        for (int i = 0; i < paragraphs.size(); i++) {
+            String text = i < paragraphs.size() - 1
+                    ? paragraphs.get(i).getText() + "\n"
+                    : paragraphs.get(i).getText();
+
+            CharBuffer charBuffer = CharBuffer.wrap(text);
+            while (encoder.encode(charBuffer, byteBuffer, false).isOverflow()) {
+                drain(byteBuffer, channel);
+            }
+        }
+
+        while (encoder.encode(CharBuffer.allocate(0), byteBuffer, true).isOverflow()) {
+            drain(byteBuffer, channel);
+        }
+        while (encoder.flush(byteBuffer).isOverflow()) {
+            drain(byteBuffer, channel);
+        }
+        drain(byteBuffer, channel);
+    }
+
+    private static void drain(ByteBuffer byteBuffer, FileChannel channel) throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+    }
+
+    /**
+     * Unlike Files.createTempFile(), which makes files only readable by their owner, the file
+     * gets the default permissions - as if the target were created directly
+     */
+    private static Path createTemporaryFile(Path target) throws IOException {
+        while (true) {
+            Path temporaryFile = target.resolveSibling("." + target.getFileName() + "." + Long.toUnsignedString(RANDOM.nextLong(), 36) + ".tmp");
+            try {
+                return Files.createFile(temporaryFile);
+            } catch (FileAlreadyExistsException e) {
+                // Another name is drawn
+            }
+        }
+    }
+
+    /**
+     * The saved file keeps the permissions of the file it replaces
+     */
+    private static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (sourceView != null && targetView != null) {
+            targetView.setPermissions(sourceView.readAttributes().permissions());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.daicy.javafxeditor;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Searches immutable documents, usually in the background.
+ * <p>
+ * Documents are scanned through a DocumentText, so the text is never copied as a whole;
+ * empty matches are ignored.
+ */
+final class DocumentSearch {
+
+    /**
+     * Maximum delay before the hits found so far are reported
+     */
+    private static final long BATCH_NANOS = 50_000_000;
+
+    private DocumentSearch() {
+    }
+
+    /**
+     * @param query     the searched text, or regular expression
+     * @param regex     true if the query is a regular expression
+     * @param matchCase true if the case of letters matters
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public static Pattern compile(String query, boolean regex, boolean matchCase) {
+        int flags = (regex ? Pattern.MULTILINE : Pattern.LITERAL)
+                | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        return Pattern.compile(query, flags);
+    }
+
+    /**
+     * Finds all the matches, reporting them in batches as they are found.
+     *
+     * @param document  the document to search
+     * @param pattern   the searched pattern
+     * @param batchSize the maximum number of hits per batch
+     * @param batches   receives arrays of consecutive start and end offsets, in document order
+     * @param cancelled tells whether the search should stop
+     * @return false if the search was cancelled
+     */
+    public static boolean findAll(StyledDocument<?, ?, ?> document, Pattern pattern, int batchSize,
+                                  Consumer<int[]> batches, BooleanSupplier cancelled) {
+        Matcher matcher = pattern.matcher(new DocumentText(document, 0));
+
+        int[] batch = new int[batchSize * 2];
+        int batchLength = 0;
+        long batchStart = System.nanoTime();
+
+        while (matcher.find()) {
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+
+            batch[batchLength++] = matcher.start();
+            batch[batchLength++] = matcher.end();
+
+            if (batchLength == batch.length || System.nanoTime() - batchStart > BATCH_NANOS) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+
+                batches.accept(Arrays.copyOf(batch, batchLength));
+                batchLength = 0;
+                batchStart = System.nanoTime();
+            }
+        }
+
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+
+        if (batchLength > 0) {
+            batches.accept(Arrays.copyOf(batch, batchLength));
+        }
+        return true;
+    }
+
+    /**
+     * Computes the replacement of every match, as a single replacement of the text from the first
+     * match to the last one - applied by one edit, however many the matches.
+     *
+     * @param replacement the replacement, where $n refers to groups as in Matcher.appendReplacement()
+     * @param cancelled   tells whether the computation should stop
+     * @return the replacement, or null if cancelled; its count is 0 if nothing matches
+     * @throws IllegalArgumentException if the replacement refers to a missing group
+     */
+    public static Replacement replaceAll(StyledDocument<?, ?, ?> document, Pattern pattern,
+                                         String replacement, BooleanSupplier cancelled) {
+        Matcher matcher = pattern.matcher(new DocumentText(document, 0));
+        StringBuilder text = new StringBuilder();
+        int start = -1;
+        int end = 0;
+        int count = 0;
+
+        while (matcher.find()) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+
+            if (matcher.end() == matcher.start()) {
+                continue;
+            }
+
+            if (start < 0) {
+                start = matcher.start();
+            }
+
+            // appendReplacement() also appends the text since the previous match: the first time, it is skipped
+            int length = text.length();
+            matcher.appendReplacement(text, replacement);
+            if (count == 0) {
+                text.delete(length, length + start - end);
+            }
+
+            end = matcher.end();
+            count++;
+        }
+
+        return new Replacement(Math.max(start, 0), end, text.toString(), count);
+    }
+
+    /**
+     * Text replacing the matches between two offsets
+     */
+    public static final class Replacement {
+        private final int start;
+        private final int end;
+        private final String text;
+        private final int count;
+
+        Replacement(int start, int end, String text, int count) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+            this.count = count;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return the number of replaced matches
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
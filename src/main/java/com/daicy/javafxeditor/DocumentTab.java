@@ -0,0 +1,96 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.scene.Node;
+import javafx.scene.control.Tab;
+import org.fxmisc.richtext.CodeArea;
+
+/**
+ * Tab of the document of a workspace.
+ * <p>
+ * The tab has no content: the view of the selected document is shown outside the TabPane,
+ * so that hidden documents are entirely out of the scene - JavaFX keeps the rendering peers
+ * of invisible nodes, which would retain released editors.
+ * While the tab is hidden, the styling of its editor is paused; the editor itself
+ * may be released, and is rebuilt as soon as the tab is selected again.
+ */
+public class DocumentTab extends Tab {
+
+    private final JavaFxWorkspace workspace;
+    private final ReadOnlyObjectWrapper<Node> view = new ReadOnlyObjectWrapper<>(null);
+    private long hiddenSince = System.nanoTime();
+
+    public DocumentTab(JavaFxWorkspace workspace) {
+        this.workspace = workspace;
+
+        textProperty().bind(Bindings.createStringBinding(() -> {
+            String name = workspace.getDocumentFileOptional().map(File::getName).orElse("Untitled");
+            return name + (workspace.isModified() ? " *" : "");
+        }, workspace.documentFileOptionalProperty(), workspace.modifiedProperty()));
+
+        InvalidationListener viewUpdater = observable -> updateView();
+        workspace.codeEditorProperty().addListener(viewUpdater);
+        workspace.largeFileViewProperty().addListener(viewUpdater);
+
+        selectedProperty().addListener((observable, wasSelected, selected) -> {
+            if (selected) {
+                workspace.restoreEditor();
+            } else {
+                hiddenSince = System.nanoTime();
+            }
+            updateStylingPaused();
+        });
+
+        updateView();
+    }
+
+    public JavaFxWorkspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * @return the node showing the document: its editor, or the view of a large file; null while released
+     */
+    public ReadOnlyObjectProperty<Node> viewProperty() {
+        return view.getReadOnlyProperty();
+    }
+
+    /**
+     * @return the System.nanoTime() when the tab was last hidden
+     */
+    public long getHiddenSince() {
+        return hiddenSince;
+    }
+
+    /**
+     * Releases the editor of the hidden tab, if possible
+     *
+     * @return true if the editor was released
+     */
+    public boolean releaseEditor() {
+        if (isSelected() || !workspace.canReleaseEditor()) {
+            return false;
+        }
+
+        workspace.releaseEditor();
+        return true;
+    }
+
+    private void updateView() {
+        LargeFileView largeFileView = workspace.largeFileViewProperty().get();
+        view.set(largeFileView != null ? largeFileView : workspace.getCodeEditor());
+        updateStylingPaused();
+    }
+
+    private void updateStylingPaused() {
+        CodeArea codeEditor = workspace.getCodeEditor();
+        if (codeEditor instanceof StyledCodeEditor) {
+            ((StyledCodeEditor) codeEditor).setStylingPaused(!isSelected());
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.scene.control.TabPane;
+import javafx.util.Duration;
+
+/**
+ * Tabs of the open documents, keeping the memory held by hidden documents bounded.
+ * The tabs have no content: the selected document is shown by the enclosing window.
+ * <p>
+ * The editor of a hidden document is released once the document has stayed hidden
+ * for the idle timeout, and at once when the heap, after a collection, is still
+ * filled beyond a threshold; the editor is rebuilt when its tab is selected again.
+ */
+public class DocumentTabPane extends TabPane {
+
+    private static final Duration IDLE_TIMEOUT = Duration.minutes(10);
+
+    private static final Duration IDLE_CHECK_PERIOD = Duration.seconds(30);
+
+    /**
+     * Fraction of the heap which, if still used after a collection, causes hidden editors to be released
+     */
+    private static final double MEMORY_PRESSURE_THRESHOLD = 0.75;
+
+    private final Timeline idleCheck = new Timeline(new KeyFrame(IDLE_CHECK_PERIOD, event -> releaseIdleEditors()));
+
+    private final NotificationListener memoryListener = (notification, handback) -> {
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            Platform.runLater(this::releaseHiddenEditors);
+        }
+    };
+
+    public DocumentTabPane() {
+        setTabClosingPolicy(TabClosingPolicy.ALL_TABS);
+
+        idleCheck.setCycleCount(Timeline.INDEFINITE);
+        idleCheck.play();
+
+        watchMemoryPressure();
+    }
+
+    /**
+     * @return the documents, in tab order
+     */
+    public List<DocumentTab> getDocumentTabs() {
+        return getTabs().stream()
+                .map(tab -> (DocumentTab) tab)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the selected document, or null if there is none
+     */
+    public DocumentTab getSelectedDocumentTab() {
+        return (DocumentTab) getSelectionModel().getSelectedItem();
+    }
+
+    /**
+     * @return the tab of the given file, if it is open
+     */
+    public Optional<DocumentTab> findDocumentTab(File file) {
+        File absoluteFile = file.getAbsoluteFile();
+
+        return getDocumentTabs().stream()
+                .filter(tab -> tab.getWorkspace().getDocumentFileOptional()
+                        .map(documentFile -> documentFile.getAbsoluteFile().equals(absoluteFile))
+                        .orElse(false))
+                .findFirst();
+    }
+
+    /**
+     * Releases the editors of all the hidden documents that allow it
+     *
+     * @return the number of released editors
+     */
+    public int releaseHiddenEditors() {
+        int releasedCount = 0;
+        for (DocumentTab tab : getDocumentTabs()) {
+            if (tab.releaseEditor()) {
+                releasedCount++;
+            }
+        }
+        return releasedCount;
+    }
+
+    /**
+     * Stops watching idle documents and memory pressure, once the window of the pane is closed:
+     * the memory bean would otherwise keep the pane, and its documents, reachable
+     */
+    public void dispose() {
+        idleCheck.stop();
+
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(memoryListener);
+        } catch (ListenerNotFoundException e) {
+            // Already disposed
+        }
+    }
+
+    private void releaseIdleEditors() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos((long) IDLE_TIMEOUT.toMillis());
+
+        for (DocumentTab tab : getDocumentTabs()) {
+            if (now - tab.getHiddenSince() > timeoutNanos) {
+                tab.releaseEditor();
+            }
+        }
+    }
+
+    /**
+     * The threshold is checked by the JVM after each collection, so it costs nothing meanwhile
+     */
+    private void watchMemoryPressure() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long maxSize = pool.getUsage().getMax();
+
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && maxSize > 0) {
+                pool.setCollectionUsageThreshold((long) (maxSize * MEMORY_PRESSURE_THRESHOLD));
+            }
+        }
+
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(memoryListener, null, null);
+    }
+}
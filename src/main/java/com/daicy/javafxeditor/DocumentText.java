@@ -0,0 +1,141 @@
+package com.daicy.javafxeditor;
+
+import java.util.Arrays;
+
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Read-only character view over an immutable document, starting at a given paragraph.
+ * <p>
+ * Paragraphs are joined by '\n' and indexed lazily, as the view is scanned:
+ * unlike StyledDocument.getText(), creating the view does not copy the document,
+ * so a scan stopping early only costs what it actually visited.
+ */
+final class DocumentText implements CharSequence {
+
+    private final StyledDocument<?, ?, ?> document;
+    private final int firstParagraph;
+    private final int paragraphCount;
+    private final int length;
+
+    private int[] paragraphStarts = new int[16];
+    private int indexedParagraphs = 1;
+
+    private int cachedParagraph = -1;
+    private String cachedParagraphText;
+
+    /**
+     * @param document       the document; it must not change while the view is in use
+     * @param firstParagraph the paragraph at which the view starts
+     */
+    DocumentText(StyledDocument<?, ?, ?> document, int firstParagraph) {
+        this.document = document;
+        this.firstParagraph = firstParagraph;
+        this.paragraphCount = document.getParagraphs().size() - firstParagraph;
+        this.length = document.length() - document.getAbsolutePosition(firstParagraph, 0);
+    }
+
+    public int getFirstParagraph() {
+        return firstParagraph;
+    }
+
+    /**
+     * @return the number of paragraphs in the view
+     */
+    public int getParagraphCount() {
+        return paragraphCount;
+    }
+
+    /**
+     * @param paragraph a paragraph index, relative to the first paragraph of the view
+     * @return the offset of the paragraph within the view
+     */
+    public int getParagraphStart(int paragraph) {
+        indexUpToParagraph(paragraph);
+        return paragraphStarts[paragraph];
+    }
+
+    /**
+     * @param paragraph a paragraph index, relative to the first paragraph of the view
+     * @return the paragraph length, excluding its line break
+     */
+    public int getParagraphLength(int paragraph) {
+        return getParagraphText(paragraph).length();
+    }
+
+    /**
+     * @param paragraph a paragraph index, relative to the first paragraph of the view
+     * @return the paragraph text, excluding its line break
+     */
+    public String getParagraphText(int paragraph) {
+        if (paragraph != cachedParagraph) {
+            cachedParagraphText = document.getParagraphs().get(firstParagraph + paragraph).getText();
+            cachedParagraph = paragraph;
+        }
+        return cachedParagraphText;
+    }
+
+    /**
+     * @param index an offset within the view
+     * @return the index of the paragraph containing the offset, relative to the first paragraph of the view
+     */
+    public int getParagraphAt(int index) {
+        if (cachedParagraph >= 0 && cachedParagraph < indexedParagraphs) {
+            int cachedStart = paragraphStarts[cachedParagraph];
+            if (index >= cachedStart && index <= cachedStart + cachedParagraphText.length()) {
+                return cachedParagraph;
+            }
+        }
+
+        while (indexedParagraphs < paragraphCount && paragraphStarts[indexedParagraphs - 1] + getParagraphLength(indexedParagraphs - 1) < index) {
+            indexUpToParagraph(indexedParagraphs);
+        }
+
+        int position = Arrays.binarySearch(paragraphStarts, 0, indexedParagraphs, index);
+        return position >= 0 ? position : -position - 2;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+
+        int paragraph = getParagraphAt(index);
+        String paragraphText = getParagraphText(paragraph);
+        int column = index - paragraphStarts[paragraph];
+
+        return column < paragraphText.length() ? paragraphText.charAt(column) : '\n';
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder result = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            result.append(charAt(i));
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+
+    private void indexUpToParagraph(int paragraph) {
+        while (indexedParagraphs <= paragraph) {
+            if (indexedParagraphs == paragraphStarts.length) {
+                paragraphStarts = Arrays.copyOf(paragraphStarts, paragraphStarts.length * 2);
+            }
+
+            int previous = indexedParagraphs - 1;
+            paragraphStarts[indexedParagraphs] = paragraphStarts[previous] + getParagraphLength(previous) + 1;
+            indexedParagraphs++;
+        }
+    }
+}
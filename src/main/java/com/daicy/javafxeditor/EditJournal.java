@@ -0,0 +1,676 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Append-only journal of the edits of a document, from which its unsaved text is recovered after a crash.
+ * <p>
+ * The journal starts from a base - the saved file, an empty document, or a snapshot of the text -
+ * followed by the edits made since. Edits are encoded into a pending buffer by the editing thread;
+ * a single background writer commits everything buffered meanwhile with one write and one flush
+ * to the storage device, so the I/O cost follows typing rather than the size of the document.
+ * Once the edits outweigh their base, the journal is compacted into a snapshot of the text.
+ * <p>
+ * The journal file only exists while the document has unsaved edits, and is locked while in use,
+ * so that other running instances of the application do not recover it.
+ */
+public class EditJournal implements AutoCloseable {
+
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x4A464A4C;
+    private static final byte VERSION = 1;
+
+    private static final byte BASE_EMPTY = 'N';
+    private static final byte BASE_FILE = 'F';
+    private static final byte BASE_TEXT = 'T';
+    private static final byte EDIT = 'E';
+    private static final byte COMMIT = 'C';
+
+    /**
+     * Edits made within this delay are written together
+     */
+    private static final long COMMIT_DELAY_MILLIS = 500;
+
+    /**
+     * Edits are never compacted before they take this number of bytes
+     */
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EditJournal writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path path;
+
+    // Shared with the writer, guarded by this
+    private Base base;
+    private boolean baseWritten = false;
+    private final ByteArrayOutputStream pendingEdits = new ByteArrayOutputStream();
+    private long baseSize = 0;
+    private long editBytes = 0;
+    private boolean fileWritten = false;
+    private boolean commitScheduled = false;
+    private boolean closed = false;
+
+    // Only used by the writer
+    private FileChannel channel;
+    private IOException failure;
+
+    private EditJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Creates a journal in the given directory; no file is written until reset() or compact() sets its base
+     */
+    public static EditJournal create(Path directory) {
+        return new EditJournal(directory.resolve(UUID.randomUUID() + JOURNAL_SUFFIX));
+    }
+
+    /**
+     * Continues the recovered journal, which then describes the recovered text
+     */
+    public static EditJournal resume(Recovery recovery) {
+        EditJournal journal = new EditJournal(recovery.getJournal());
+
+        synchronized (journal) {
+            journal.base = new Base(BASE_TEXT, recovery.getFileOptional().orElse(null), 0, 0, null);
+            journal.baseWritten = true;
+            journal.fileWritten = true;
+            journal.baseSize = recovery.getBaseSize();
+            journal.editBytes = recovery.getEditBytes();
+        }
+
+        WRITER.execute(() -> journal.reopen(recovery.getValidLength()));
+        return journal;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Restarts the journal from the saved file - or from an empty document, if untitled:
+     * until the next edit, nothing needs to be recovered.
+     *
+     * @param documentFile the file matching the text of the document, or null if the document is empty
+     */
+    public synchronized void reset(File documentFile) {
+        Base savedBase = documentFile == null
+                ? new Base(BASE_EMPTY, null, 0, 0, null)
+                : new Base(BASE_FILE, documentFile, documentFile.length(), documentFile.lastModified(), null);
+
+        if (closed || (editBytes == 0 && savedBase.equals(base))) {
+            return;
+        }
+
+        restart(savedBase, savedBase.fileSize);
+    }
+
+    /**
+     * Restarts the journal from a snapshot of the text, which is written in the background
+     *
+     * @param documentFile the file of the document, or null if untitled
+     * @param snapshot     the current text, as an immutable snapshot
+     */
+    public synchronized void compact(File documentFile, StyledDocument<?, ?, ?> snapshot) {
+        if (closed) {
+            return;
+        }
+
+        restart(new Base(BASE_TEXT, documentFile, 0, 0, snapshot), snapshot.length());
+    }
+
+    private void restart(Base newBase, long newBaseSize) {
+        base = newBase;
+        baseWritten = false;
+        baseSize = newBaseSize;
+        editBytes = 0;
+        pendingEdits.reset();
+
+        // A clean base only needs to delete the previous journal file
+        if (fileWritten || !newBase.isClean()) {
+            scheduleCommit();
+        }
+    }
+
+    /**
+     * Appends an edit, committed with the others made meanwhile
+     *
+     * @param position      the position of the edit
+     * @param removedLength the number of removed characters
+     * @param insertedText  the inserted text
+     */
+    public synchronized void append(int position, int removedLength, String insertedText) {
+        if (closed || base == null) {
+            return;
+        }
+
+        byte[] insertedBytes = insertedText.getBytes(StandardCharsets.UTF_8);
+        int start = pendingEdits.size();
+
+        pendingEdits.write(EDIT);
+        BinaryEncoding.writeVarint(pendingEdits, position);
+        BinaryEncoding.writeVarint(pendingEdits, removedLength);
+        BinaryEncoding.writeVarint(pendingEdits, insertedBytes.length);
+        pendingEdits.write(insertedBytes, 0, insertedBytes.length);
+
+        editBytes += pendingEdits.size() - start;
+        scheduleCommit();
+    }
+
+    /**
+     * @return true if the edits outweigh their base, so that compact() should be called
+     */
+    public synchronized boolean isCompactionDue() {
+        return editBytes > Math.max(MIN_COMPACTION_BYTES, baseSize);
+    }
+
+    /**
+     * Commits the pending edits at once, waiting until they are written
+     */
+    void flush() {
+        awaitWriter(this::commit);
+    }
+
+    /**
+     * Deletes the journal - the document no longer needs recovery - waiting until it is deleted
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingEdits.reset();
+        }
+
+        awaitWriter(() -> {
+            try {
+                closeChannel();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static void awaitWriter(Runnable task) {
+        try {
+            WRITER.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private void scheduleCommit() {
+        if (!commitScheduled) {
+            commitScheduled = true;
+            WRITER.schedule(this::commit, COMMIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void commit() {
+        Base committedBase;
+        boolean rewrite;
+        byte[] edits;
+
+        synchronized (this) {
+            commitScheduled = false;
+            if (closed || failure != null || base == null) {
+                return;
+            }
+
+            committedBase = base;
+            rewrite = !baseWritten;
+            edits = pendingEdits.toByteArray();
+            pendingEdits.reset();
+        }
+
+        try {
+            if (rewrite && committedBase.isClean() && edits.length == 0) {
+                closeChannel();
+                Files.deleteIfExists(path);
+                markDeleted();
+            } else if (rewrite) {
+                rewrite(committedBase, edits);
+                markWritten(committedBase);
+            } else if (edits.length > 0) {
+                channel.write(encodeCommit(edits));
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            // Journaling stops, without affecting editing
+            failure = e;
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The base stays to be written with the next edits
+     */
+    private synchronized void markDeleted() {
+        fileWritten = false;
+    }
+
+    private synchronized void markWritten(Base writtenBase) {
+        fileWritten = true;
+        if (base == writtenBase) {
+            baseWritten = true;
+        }
+    }
+
+    /**
+     * Writes the base and the edits into a new file, atomically replacing the journal
+     */
+    private void rewrite(Base newBase, byte[] edits) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, "." + path.getFileName(), ".tmp");
+
+        try {
+            try (FileChannel output = FileChannel.open(temporaryFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(newBase, output);
+                if (edits.length > 0) {
+                    output.write(encodeCommit(edits));
+                }
+                output.force(true);
+            }
+
+            closeChannel();
+            try {
+                Files.move(temporaryFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        openChannel();
+    }
+
+    private static void writeHeader(Base newBase, FileChannel output) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        BinaryEncoding.writeInt(header, MAGIC);
+        header.write(VERSION);
+        BinaryEncoding.writeString(header, newBase.documentFile != null ? newBase.documentFile.getAbsolutePath() : "");
+        header.write(newBase.kind);
+        if (newBase.kind == BASE_FILE) {
+            BinaryEncoding.writeLong(header, newBase.fileSize);
+            BinaryEncoding.writeLong(header, newBase.fileModified);
+        }
+        writeFully(output, ByteBuffer.wrap(header.toByteArray()));
+
+        if (newBase.kind == BASE_TEXT) {
+            // The length of the text, only known once encoded, is written in front of it afterwards
+            long lengthPosition = output.position();
+            writeFully(output, ByteBuffer.allocate(Long.BYTES));
+            DocumentSaver.write(newBase.snapshot, output, StandardCharsets.UTF_8);
+
+            long textEnd = output.position();
+            output.write(ByteBuffer.allocate(Long.BYTES).putLong(0, textEnd - lengthPosition - Long.BYTES), lengthPosition);
+        }
+    }
+
+    private void reopen(long validLength) {
+        try {
+            openChannel();
+            // A commit interrupted by the crash is discarded
+            channel.truncate(validLength);
+        } catch (IOException e) {
+            failure = e;
+            e.printStackTrace();
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        try {
+            channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Already locked by this very session
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * A commit is its edits followed by their checksum: recovery ignores any commit not entirely written
+     */
+    private static ByteBuffer encodeCommit(byte[] edits) {
+        CRC32 checksum = new CRC32();
+        checksum.update(edits);
+
+        ByteBuffer buffer = ByteBuffer.allocate(edits.length + 1 + Integer.BYTES);
+        buffer.put(edits).put(COMMIT).putInt((int) checksum.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Lists the journals left by sessions that did not end normally - skipping those still in use
+     *
+     * @return the journals, or an empty list if the directory does not exist
+     */
+    public static List<Path> findJournals(Path directory) throws IOException {
+        List<Path> journals = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return journals;
+        }
+
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + JOURNAL_SUFFIX)) {
+            for (Path journal : paths) {
+                try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+                    FileLock journalLock = channel.tryLock();
+                    if (journalLock != null) {
+                        journals.add(journal);
+                    }
+                } catch (OverlappingFileLockException e) {
+                    // Used by this very session
+                }
+            }
+        }
+
+        return journals;
+    }
+
+    /**
+     * Replays a journal over its base, up to its last complete commit
+     *
+     * @throws IOException if the journal cannot be read, or its base file was changed meanwhile
+     */
+    public static Recovery recover(Path journal) throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(Files.readAllBytes(journal));
+
+        try {
+            if (input.getInt() != MAGIC || input.get() != VERSION) {
+                throw new IOException("Unsupported journal: " + journal);
+            }
+
+            String path = BinaryEncoding.readString(input);
+            File documentFile = !path.isEmpty() ? new File(path) : null;
+
+            String baseText;
+            byte baseKind = input.get();
+            if (baseKind == BASE_EMPTY) {
+                baseText = "";
+            } else if (baseKind == BASE_FILE) {
+                long fileSize = input.getLong();
+                long fileModified = input.getLong();
+                if (documentFile == null || documentFile.length() != fileSize || documentFile.lastModified() != fileModified) {
+                    throw new IOException("The file was changed after the edits: " + documentFile);
+                }
+                baseText = new String(Files.readAllBytes(documentFile.toPath()), StandardCharsets.UTF_8);
+            } else if (baseKind == BASE_TEXT) {
+                byte[] textBytes = new byte[(int) input.getLong()];
+                input.get(textBytes);
+                baseText = new String(textBytes, StandardCharsets.UTF_8);
+            } else {
+                throw new IOException("Unsupported journal: " + journal);
+            }
+
+            long baseEnd = input.position();
+            GapBuffer text = new GapBuffer(baseText);
+            long validLength = replay(input, text);
+
+            return new Recovery(journal, documentFile, text.toString(), validLength, baseText.length(), validLength - baseEnd);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Truncated journal: " + journal, e);
+        }
+    }
+
+    /**
+     * @return the length of the journal up to its last complete commit
+     */
+    private static long replay(ByteBuffer input, GapBuffer text) {
+        int commitStart = input.position();
+
+        try {
+            while (input.hasRemaining()) {
+                byte tag = input.get();
+
+                if (tag == EDIT) {
+                    BinaryEncoding.readVarint(input);
+                    BinaryEncoding.readVarint(input);
+                    int insertedLength = (int) BinaryEncoding.readVarint(input);
+                    input.position(input.position() + insertedLength);
+                } else if (tag == COMMIT) {
+                    int editsEnd = input.position() - 1;
+                    CRC32 checksum = new CRC32();
+                    checksum.update(input.array(), commitStart, editsEnd - commitStart);
+                    if (input.getInt() != (int) checksum.getValue()) {
+                        break;
+                    }
+
+                    if (!applyEdits(input.duplicate().limit(editsEnd).position(commitStart), text)) {
+                        break;
+                    }
+                    commitStart = input.position();
+                } else {
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IOException e) {
+            // The last commit was not entirely written
+        }
+
+        return commitStart;
+    }
+
+    /**
+     * @return false if an edit does not fit the text, in which case the journal is corrupted
+     */
+    private static boolean applyEdits(ByteBuffer edits, GapBuffer text) throws IOException {
+        while (edits.hasRemaining()) {
+            edits.get();
+            int position = (int) BinaryEncoding.readVarint(edits);
+            int removedLength = (int) BinaryEncoding.readVarint(edits);
+            byte[] insertedBytes = new byte[(int) BinaryEncoding.readVarint(edits)];
+            edits.get(insertedBytes);
+
+            if (position < 0 || removedLength < 0 || position > text.length() - removedLength) {
+                return false;
+            }
+            text.replace(position, removedLength, new String(insertedBytes, StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
+    /**
+     * Deletes a recovered journal whose text is not wanted
+     */
+    public static void discard(Path journal) throws IOException {
+        Files.deleteIfExists(journal);
+    }
+
+    /**
+     * The text recovered from a journal
+     */
+    public static final class Recovery {
+        private final Path journal;
+        private final File documentFile;
+        private final String text;
+        private final long validLength;
+        private final long baseSize;
+        private final long editBytes;
+
+        Recovery(Path journal, File documentFile, String text, long validLength, long baseSize, long editBytes) {
+            this.journal = journal;
+            this.documentFile = documentFile;
+            this.text = text;
+            this.validLength = validLength;
+            this.baseSize = baseSize;
+            this.editBytes = editBytes;
+        }
+
+        public Path getJournal() {
+            return journal;
+        }
+
+        /**
+         * @return the file of the document, or an empty Optional if untitled
+         */
+        public Optional<File> getFileOptional() {
+            return Optional.ofNullable(documentFile);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        long getValidLength() {
+            return validLength;
+        }
+
+        long getBaseSize() {
+            return baseSize;
+        }
+
+        long getEditBytes() {
+            return editBytes;
+        }
+    }
+
+    private static final class Base {
+        private final byte kind;
+        private final File documentFile;
+        private final long fileSize;
+        private final long fileModified;
+        private final StyledDocument<?, ?, ?> snapshot;
+
+        Base(byte kind, File documentFile, long fileSize, long fileModified, StyledDocument<?, ?, ?> snapshot) {
+            this.kind = kind;
+            this.documentFile = documentFile;
+            this.fileSize = fileSize;
+            this.fileModified = fileModified;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * @return true if the base is saved elsewhere, so that a journal without edits is not needed
+         */
+        boolean isClean() {
+            return kind != BASE_TEXT;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Base)) {
+                return false;
+            }
+
+            Base otherBase = (Base) other;
+            return isClean() && kind == otherBase.kind
+                    && fileSize == otherBase.fileSize && fileModified == otherBase.fileModified
+                    && (documentFile == null ? otherBase.documentFile == null : documentFile.equals(otherBase.documentFile));
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(fileModified);
+        }
+    }
+
+    /**
+     * Text edited around a movable gap, so that replaying nearby edits does not shift the whole text
+     */
+    private static final class GapBuffer {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapBuffer(String text) {
+            chars = new char[text.length() + 1024];
+            text.getChars(0, text.length(), chars, 0);
+            gapStart = text.length();
+            gapEnd = chars.length;
+        }
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        void replace(int position, int removedLength, String insertedText) {
+            moveGap(position);
+            gapEnd += removedLength;
+
+            if (gapEnd - gapStart < insertedText.length()) {
+                char[] grown = new char[Math.max(chars.length * 2, length() + insertedText.length() + 1024)];
+                int tailLength = chars.length - gapEnd;
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tailLength, tailLength);
+                chars = grown;
+                gapEnd = grown.length - tailLength;
+            }
+
+            insertedText.getChars(0, insertedText.length(), chars, gapStart);
+            gapStart += insertedText.length();
+        }
+
+        private void moveGap(int position) {
+            if (position < gapStart) {
+                int count = gapStart - position;
+                System.arraycopy(chars, position, chars, gapEnd - count, count);
+                gapStart -= count;
+                gapEnd -= count;
+            } else if (position > gapStart) {
+                int count = position - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, count);
+                gapStart += count;
+                gapEnd += count;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuilder(length())
+                    .append(chars, 0, gapStart)
+                    .append(chars, gapEnd, chars.length - gapEnd)
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.daicy.javafxeditor;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the performance metrics of a document, from the FX thread and from background threads:
+ * recording never allocates, so metrics are always on.
+ */
+public final class EditorMetrics implements EditorMetricsMXBean {
+
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+
+    private final ObjectName objectName;
+
+    private volatile String documentName = "Untitled";
+    private volatile int documentLength = 0;
+    private volatile int paragraphCount = 1;
+
+    private final TimerMetric highlightPasses = new TimerMetric();
+    private final RateMetric highlightPassRate = new RateMetric();
+    private final TimerMetric styleLag = new TimerMetric();
+    private final TimerMetric styleApplication = new TimerMetric();
+    private final TimerMetric fileOpens = new TimerMetric();
+    private final TimerMetric fileSaves = new TimerMetric();
+
+    public EditorMetrics() {
+        try {
+            objectName = new ObjectName("com.daicy.javafxeditor:type=Editor,id=" + nextId.getAndIncrement());
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Exposes the metrics to JMX clients, such as JConsole
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void unregister() {
+        try {
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void setDocumentName(String documentName) {
+        this.documentName = documentName;
+    }
+
+    public void setDocumentSize(int length, int paragraphCount) {
+        this.documentLength = length;
+        this.paragraphCount = paragraphCount;
+    }
+
+    public void recordHighlightPass(long nanos) {
+        highlightPasses.record(nanos);
+        highlightPassRate.record(1);
+    }
+
+    public void recordStyleLag(long nanos) {
+        styleLag.record(nanos);
+    }
+
+    public void recordStyleApplication(long nanos) {
+        styleApplication.record(nanos);
+    }
+
+    public void recordFileOpen(long nanos) {
+        fileOpens.record(nanos);
+    }
+
+    public void recordFileSave(long nanos) {
+        fileSaves.record(nanos);
+    }
+
+    @Override
+    public String getDocumentName() {
+        return documentName;
+    }
+
+    @Override
+    public int getDocumentLength() {
+        return documentLength;
+    }
+
+    @Override
+    public int getParagraphCount() {
+        return paragraphCount;
+    }
+
+    @Override
+    public TimerMetric.Statistics getHighlightPasses() {
+        return highlightPasses.getStatistics();
+    }
+
+    @Override
+    public double getHighlightPassesPerSecond() {
+        return highlightPassRate.getRate();
+    }
+
+    @Override
+    public TimerMetric.Statistics getStyleLag() {
+        return styleLag.getStatistics();
+    }
+
+    @Override
+    public TimerMetric.Statistics getStyleApplication() {
+        return styleApplication.getStatistics();
+    }
+
+    @Override
+    public TimerMetric.Statistics getFileOpens() {
+        return fileOpens.getStatistics();
+    }
+
+    @Override
+    public TimerMetric.Statistics getFileSaves() {
+        return fileSaves.getStatistics();
+    }
+}
@@ -0,0 +1,47 @@
+package com.daicy.javafxeditor;
+
+/**
+ * Performance metrics of a document, registered as com.daicy.javafxeditor:type=Editor,id=N
+ * for as long as its tab is open. Durations are in milliseconds.
+ */
+public interface EditorMetricsMXBean {
+
+    /**
+     * @return the name of the file of the document, or "Untitled"
+     */
+    String getDocumentName();
+
+    /**
+     * @return the length of the document, in characters, as of its latest edit
+     */
+    int getDocumentLength();
+
+    int getParagraphCount();
+
+    /**
+     * @return the durations of the styling passes, computed in the background
+     */
+    TimerMetric.Statistics getHighlightPasses();
+
+    double getHighlightPassesPerSecond();
+
+    /**
+     * @return the delays between an edit and the moment the styles of all the edited paragraphs are applied
+     */
+    TimerMetric.Statistics getStyleLag();
+
+    /**
+     * @return the time spent on the FX thread applying the results of styling passes
+     */
+    TimerMetric.Statistics getStyleApplication();
+
+    /**
+     * @return the durations of opening the file, from reading it to showing it in the editor
+     */
+    TimerMetric.Statistics getFileOpens();
+
+    /**
+     * @return the durations of writing the file, in the background
+     */
+    TimerMetric.Statistics getFileSaves();
+}
@@ -7,6 +7,8 @@ import org.fxmisc.richtext.CodeArea;
 
 import java.io.File;
 import java.net.URL;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class EditorStrategy implements AppStrategy {
@@ -38,6 +40,26 @@ public class EditorStrategy implements AppStrategy {
         return selectedFile;
     }
 
+    /**
+     * Runs Java source files with the current Java launcher, and scripts with their usual interpreter
+     */
+    @Override
+    public Optional<List<String>> getRunCommand(File sourceFile) {
+        String fileName = sourceFile.getName();
+        String filePath = sourceFile.getAbsolutePath();
+
+        if (fileName.endsWith(".java")) {
+            String javaCommand = ProcessHandle.current().info().command().orElse("java");
+            return Optional.of(List.of(javaCommand, filePath));
+        } else if (fileName.endsWith(".sh")) {
+            return Optional.of(List.of("sh", filePath));
+        } else if (fileName.endsWith(".py")) {
+            return Optional.of(List.of("python3", filePath));
+        } else {
+            return Optional.empty();
+        }
+    }
+
     @Override
     public boolean settingsSupported() {
         return false;
@@ -0,0 +1,131 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+/**
+ * Detects when the FX thread stops responding, logging what it was doing.
+ * <p>
+ * The watchdog posts a heartbeat through Platform.runLater(), a new one once the previous one has run:
+ * when a heartbeat waits longer than the threshold, the FX thread is stalled. Its stack and the recent
+ * events of the editor are then appended to the log, followed - once the heartbeat finally runs -
+ * by the duration of the stall. The log is only written by the watchdog, never by the FX thread.
+ */
+public class FxStallWatchdog extends Thread {
+
+    private final long thresholdNanos;
+    private final long checkIntervalMillis;
+    private final RecentEvents recentEvents;
+    private final RotatingLog log;
+
+    private final Runnable heartbeat = this::beat;
+
+    private volatile boolean heartbeatPending = false;
+    private volatile long heartbeatPostedNanos = 0;
+    private volatile long heartbeatAnsweredNanos = 0;
+    private volatile boolean stallReported = false;
+    private volatile Thread fxThread;
+
+    /**
+     * @param threshold    the delay after which an unanswered heartbeat is reported as a stall
+     * @param recentEvents the events included in stall reports
+     * @param log          the log receiving the reports
+     */
+    public FxStallWatchdog(Duration threshold, RecentEvents recentEvents, RotatingLog log) {
+        super("FX watchdog");
+        setDaemon(true);
+
+        this.thresholdNanos = threshold.toNanos();
+        this.checkIntervalMillis = Math.max(10, threshold.toMillis() / 4);
+        this.recentEvents = recentEvents;
+        this.log = log;
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long now = System.nanoTime();
+
+            if (!heartbeatPending) {
+                if (stallReported) {
+                    long stallMillis = TimeUnit.NANOSECONDS.toMillis(heartbeatAnsweredNanos - heartbeatPostedNanos);
+                    append("FX thread responsive again after " + stallMillis + " ms\n\n");
+                    stallReported = false;
+                }
+
+                heartbeatPostedNanos = now;
+                heartbeatPending = true;
+                try {
+                    Platform.runLater(heartbeat);
+                } catch (IllegalStateException e) {
+                    // The toolkit has exited
+                    return;
+                }
+            } else if (!stallReported && now - heartbeatPostedNanos > thresholdNanos) {
+                stallReported = true;
+                reportStall(now - heartbeatPostedNanos);
+            }
+
+            try {
+                Thread.sleep(checkIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs on the FX thread, which must not wait for the log
+     */
+    private void beat() {
+        fxThread = Thread.currentThread();
+        heartbeatAnsweredNanos = System.nanoTime();
+        heartbeatPending = false;
+    }
+
+    private void reportStall(long stalledNanos) {
+        StringBuilder report = new StringBuilder();
+        report.append("=== FX thread stalled for ").append(TimeUnit.NANOSECONDS.toMillis(stalledNanos))
+                .append(" ms at ").append(LocalDateTime.now()).append(" ===\n");
+
+        Thread thread = fxThread;
+        if (thread == null) {
+            report.append("The FX thread has not answered any heartbeat yet\n");
+        } else {
+            ThreadInfo info = ManagementFactory.getThreadMXBean().getThreadInfo(thread.getId());
+            report.append("State: ").append(thread.getState());
+            if (info != null && info.getLockName() != null) {
+                report.append(", waiting for ").append(info.getLockName());
+                if (info.getLockOwnerName() != null) {
+                    report.append(" held by \"").append(info.getLockOwnerName()).append('"');
+                }
+            }
+            report.append('\n');
+
+            for (StackTraceElement element : thread.getStackTrace()) {
+                report.append("    at ").append(element).append('\n');
+            }
+        }
+
+        report.append("Recent events:\n");
+        for (String event : recentEvents.format()) {
+            report.append("    ").append(event).append('\n');
+        }
+
+        append(report.toString());
+    }
+
+    private void append(String entry) {
+        try {
+            log.append(entry);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.StyledDocument;
+
+/**
+ * Styles computed for whole documents, kept on disk and addressed by content: a document
+ * whose text was already styled - reopened, or restored by switching branches - is not lexed again.
+ * <p>
+ * Each entry is a file named after a hash of the text and a hash of the styling rules,
+ * so that changing the rules of an editor never serves the styles of the previous ones;
+ * such entries just stop being used. The directory is bounded in size, evicting the entries
+ * least recently used - recorded as their modification time - first.
+ * <p>
+ * Entries are replaced atomically, so the cache can be shared by several editors and processes.
+ */
+public final class HighlightCache {
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A464843;
+    private static final byte VERSION = 1;
+
+    private static final String ENTRY_SUFFIX = ".styles";
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * @param directory the directory of the entries, created once needed
+     * @param maxSize   the maximum total size of the entries, in bytes
+     */
+    public HighlightCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param rulesHash the hash of the rules styling the document
+     * @return the key of the styles of the given text under the given rules
+     */
+    static String computeKey(StyledDocument<?, ?, ?> document, int rulesHash) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        boolean firstParagraph = true;
+        for (Paragraph<?, ?, ?> paragraph : document.getParagraphs()) {
+            if (!firstParagraph) {
+                digest.update((byte) '\n');
+            }
+            digest.update(paragraph.getText().getBytes(StandardCharsets.UTF_8));
+            firstParagraph = false;
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.append('-').append(Integer.toHexString(rulesHash)).toString();
+    }
+
+    /**
+     * Finds the styles stored with the given key, marking them as recently used
+     *
+     * @return the styles, or an empty Optional if they are not stored - or no longer readable
+     */
+    public Optional<HighlightSnapshot> load(String key) {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+
+        try {
+            ByteBuffer input = ByteBuffer.wrap(Files.readAllBytes(entry));
+            if (input.getInt() != MAGIC || input.get() != VERSION) {
+                throw new IOException("Unsupported entry: " + entry);
+            }
+            HighlightSnapshot snapshot = HighlightSnapshot.read(input);
+
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(snapshot);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | BufferUnderflowException e) {
+            e.printStackTrace();
+            deleteEntry(entry);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the styles with the given key, then evicts the least recently used entries beyond the maximum size
+     */
+    public void store(String key, HighlightSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(snapshot.getEncodedSize() + 32);
+        BinaryEncoding.writeInt(output, MAGIC);
+        output.write(VERSION);
+        snapshot.write(output);
+
+        Files.createDirectories(directory);
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        Path temporaryFile = Files.createTempFile(directory, "." + key, ".tmp");
+        try {
+            Files.write(temporaryFile, output.toByteArray());
+            try {
+                Files.move(temporaryFile, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+
+        evict();
+    }
+
+    private synchronized void evict() throws IOException {
+        List<Map.Entry<Path, BasicFileAttributes>> entries = new ArrayList<>();
+        long totalSize = 0;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX)) {
+            for (Path entry : stream) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    entries.add(Map.entry(entry, attributes));
+                    totalSize += attributes.size();
+                } catch (NoSuchFileException e) {
+                    // Evicted meanwhile by another editor
+                }
+            }
+        }
+
+        entries.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+
+        for (Map.Entry<Path, BasicFileAttributes> entry : entries) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+            deleteEntry(entry.getKey());
+            totalSize -= entry.getValue().size();
+        }
+    }
+
+    private static void deleteEntry(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
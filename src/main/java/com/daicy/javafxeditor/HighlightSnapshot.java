@@ -0,0 +1,225 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+/**
+ * Styles of a whole document, along with the lexer state of each paragraph, in a compact
+ * binary form: a document known to be unchanged can be shown highlighted without lexing it again.
+ * <p>
+ * Spans are stored as runs - a length and an index into a table of the distinct styles -
+ * and paragraph states as runs of equal states; both as variable-length numbers, so that
+ * a typical span takes two bytes. The snapshot also records a hash of the styling rules,
+ * as it does not apply once they change.
+ */
+public final class HighlightSnapshot {
+
+    private final int rulesHash;
+    private final int length;
+    private final int paragraphCount;
+    private final byte[] data;
+
+    private HighlightSnapshot(int rulesHash, int length, int paragraphCount, byte[] data) {
+        this.rulesHash = rulesHash;
+        this.length = length;
+        this.paragraphCount = paragraphCount;
+        this.data = data;
+    }
+
+    /**
+     * @param rulesHash             the hash of the rules that computed the styles
+     * @param styleSpans            the styles of the whole document
+     * @param paragraphStates       the lexer state at the start of each paragraph
+     * @param unterminatedParagraph the paragraph where a token open until the end of the text starts, or -1
+     */
+    static HighlightSnapshot encode(int rulesHash, StyleSpans<Collection<String>> styleSpans, short[] paragraphStates, int unterminatedParagraph) {
+        Map<Collection<String>, Integer> styleIndexes = new HashMap<>();
+        List<Collection<String>> styleTable = new ArrayList<>();
+        ByteArrayOutputStream spanData = new ByteArrayOutputStream();
+
+        BinaryEncoding.writeVarint(spanData, styleSpans.getSpanCount());
+        for (StyleSpan<Collection<String>> span : styleSpans) {
+            Integer styleIndex = styleIndexes.get(span.getStyle());
+            if (styleIndex == null) {
+                styleIndex = styleTable.size();
+                styleIndexes.put(span.getStyle(), styleIndex);
+                styleTable.add(span.getStyle());
+            }
+
+            BinaryEncoding.writeVarint(spanData, styleIndex);
+            BinaryEncoding.writeVarint(spanData, span.getLength());
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(spanData.size() + 64);
+
+        BinaryEncoding.writeVarint(output, styleTable.size());
+        for (Collection<String> style : styleTable) {
+            BinaryEncoding.writeVarint(output, style.size());
+            for (String styleClass : style) {
+                BinaryEncoding.writeString(output, styleClass);
+            }
+        }
+
+        output.writeBytes(spanData.toByteArray());
+
+        int runStart = 0;
+        while (runStart < paragraphStates.length) {
+            int runEnd = runStart + 1;
+            while (runEnd < paragraphStates.length && paragraphStates[runEnd] == paragraphStates[runStart]) {
+                runEnd++;
+            }
+
+            // States start from UNKNOWN, that is -1
+            BinaryEncoding.writeVarint(output, paragraphStates[runStart] + 1);
+            BinaryEncoding.writeVarint(output, runEnd - runStart);
+            runStart = runEnd;
+        }
+
+        BinaryEncoding.writeVarint(output, unterminatedParagraph + 1);
+
+        return new HighlightSnapshot(rulesHash, styleSpans.length(), paragraphStates.length, output.toByteArray());
+    }
+
+    public int getRulesHash() {
+        return rulesHash;
+    }
+
+    /**
+     * @return the length of the styled text
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getParagraphCount() {
+        return paragraphCount;
+    }
+
+    /**
+     * @return the number of bytes taken by the encoded styles
+     */
+    public int getEncodedSize() {
+        return data.length;
+    }
+
+    /**
+     * @throws IOException if the encoded styles are corrupted
+     */
+    Contents decode() throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(data);
+
+        try {
+            int styleCount = BinaryEncoding.readVarintAsInt(input);
+            List<Collection<String>> styleTable = new ArrayList<>();
+            for (int i = 0; i < styleCount; i++) {
+                int classCount = BinaryEncoding.readVarintAsInt(input);
+                if (classCount == 0) {
+                    styleTable.add(Collections.emptyList());
+                } else {
+                    List<String> style = new ArrayList<>(classCount);
+                    for (int j = 0; j < classCount; j++) {
+                        style.add(BinaryEncoding.readString(input));
+                    }
+                    styleTable.add(Collections.unmodifiableList(style));
+                }
+            }
+
+            int spanCount = BinaryEncoding.readVarintAsInt(input);
+            StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>(spanCount);
+            int spansLength = 0;
+            for (int i = 0; i < spanCount; i++) {
+                int styleIndex = BinaryEncoding.readVarintAsInt(input);
+                int spanLength = BinaryEncoding.readVarintAsInt(input);
+                if (styleIndex >= styleTable.size()) {
+                    throw new IOException("Invalid style: " + styleIndex);
+                }
+
+                spansBuilder.add(styleTable.get(styleIndex), spanLength);
+                spansLength += spanLength;
+            }
+            if (spanCount == 0 || spansLength != length) {
+                throw new IOException("The styles do not match the text length");
+            }
+
+            short[] paragraphStates = new short[paragraphCount];
+            int paragraph = 0;
+            while (paragraph < paragraphCount) {
+                short state = (short) (BinaryEncoding.readVarintAsInt(input) - 1);
+                int runLength = BinaryEncoding.readVarintAsInt(input);
+                if (runLength == 0 || runLength > paragraphCount - paragraph) {
+                    throw new IOException("The paragraph states do not match the paragraph count");
+                }
+
+                for (int end = paragraph + runLength; paragraph < end; paragraph++) {
+                    paragraphStates[paragraph] = state;
+                }
+            }
+
+            int unterminatedParagraph = BinaryEncoding.readVarintAsInt(input) - 1;
+
+            return new Contents(spansBuilder.create(), paragraphStates, unterminatedParagraph);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated styles", e);
+        }
+    }
+
+    void write(ByteArrayOutputStream output) {
+        BinaryEncoding.writeInt(output, rulesHash);
+        BinaryEncoding.writeVarint(output, length);
+        BinaryEncoding.writeVarint(output, paragraphCount);
+        BinaryEncoding.writeBytes(output, data);
+    }
+
+    /**
+     * @throws IOException if the snapshot is truncated or corrupted
+     * @throws BufferUnderflowException if the snapshot is truncated
+     */
+    static HighlightSnapshot read(ByteBuffer input) throws IOException {
+        int rulesHash = input.getInt();
+        int length = BinaryEncoding.readVarintAsInt(input);
+        int paragraphCount = BinaryEncoding.readVarintAsInt(input);
+        byte[] data = BinaryEncoding.readBytes(input);
+
+        return new HighlightSnapshot(rulesHash, length, paragraphCount, data);
+    }
+
+    /**
+     * The decoded styles
+     */
+    static final class Contents {
+
+        private final StyleSpans<Collection<String>> styleSpans;
+        private final short[] paragraphStates;
+        private final int unterminatedParagraph;
+
+        Contents(StyleSpans<Collection<String>> styleSpans, short[] paragraphStates, int unterminatedParagraph) {
+            this.styleSpans = styleSpans;
+            this.paragraphStates = paragraphStates;
+            this.unterminatedParagraph = unterminatedParagraph;
+        }
+
+        public StyleSpans<Collection<String>> getStyleSpans() {
+            return styleSpans;
+        }
+
+        public short[] getParagraphStates() {
+            return paragraphStates;
+        }
+
+        public int getUnterminatedParagraph() {
+            return unterminatedParagraph;
+        }
+    }
+}
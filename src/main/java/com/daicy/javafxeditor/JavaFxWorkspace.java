@@ -3,11 +3,26 @@ package com.daicy.javafxeditor;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.concurrent.Task;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.PlainTextChange;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.undo.UndoManager;
+import org.reactfx.Subscription;
 //import info.gianlucacosta.helios.fx.workspace.Workspace;
 //import scalafx.stage.FileChooser;
 //import scalafx.scene.control.TextArea;
@@ -18,49 +33,556 @@ import org.fxmisc.richtext.CodeArea;
 
 public class JavaFxWorkspace extends Workspace {
 
+    private static final ExecutorService IO_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "JavaFxWorkspace I/O");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Files larger than this number of bytes are opened read-only, in a LargeFileView
+     */
+    static final long LARGE_FILE_THRESHOLD = 64L * 1024 * 1024;
+
     private final Stage stage;
     private final FileChooser documentFileChooser;
-    private final CodeArea codeEditor;
+    private final Supplier<? extends CodeArea> codeEditorFactory;
+
+    private final ReadOnlyObjectWrapper<CodeArea> codeEditor = new ReadOnlyObjectWrapper<>(null);
+    private final InvalidationListener modifiedUpdater = observable -> updateModified();
+
+    /**
+     * Journal of the unsaved edits, for crash recovery; null for none
+     */
+    private final EditJournal journal;
+    private Subscription journalSubscription;
+    private boolean journalSuspended = false;
+
+    /**
+     * State of the document while its editor is released; null while the editor exists
+     */
+    private DocumentDescriptor releasedDocument;
+
+    /**
+     * Size and modification time of the file when last loaded or saved, identifying the unmodified text; -1 if unknown
+     */
+    private long fileSize = -1;
+    private long fileModified = 0;
+
+    private final SimpleObjectProperty<DocumentLoader> documentLoader = new SimpleObjectProperty<>(null);
+
+    private final SimpleObjectProperty<LargeFileView> largeFileView = new SimpleObjectProperty<>(null);
+    private Task<Void> lineIndexer;
+
+    private CompletableFuture<Revision> latestSave = CompletableFuture.completedFuture(null);
 
-    public JavaFxWorkspace(Stage stage, FileChooser documentFileChooser, CodeArea codeEditor) {
+    private final EditorMetrics metrics = new EditorMetrics();
+    private long loadingStartNanos = 0;
+    private PerformanceEvents.FileOpen openEvent;
+
+    /**
+     * Creates a workspace showing a new, empty document
+     *
+     * @param codeEditorFactory creates the editor of the document, again whenever it was released
+     */
+    public JavaFxWorkspace(Stage stage, FileChooser documentFileChooser, Supplier<? extends CodeArea> codeEditorFactory) {
+        this(stage, documentFileChooser, codeEditorFactory, null, null);
+    }
+
+    /**
+     * @param releasedDocument the document, only loaded once restoreEditor() is called;
+     *                         null for a new, empty document shown at once
+     * @param journal          journals the edits until they are saved; null for no crash recovery
+     */
+    public JavaFxWorkspace(Stage stage, FileChooser documentFileChooser, Supplier<? extends CodeArea> codeEditorFactory,
+                           DocumentDescriptor releasedDocument, EditJournal journal) {
         super(stage, documentFileChooser);
         this.stage = stage;
         this.documentFileChooser = documentFileChooser;
-        this.codeEditor = codeEditor;
+        this.codeEditorFactory = codeEditorFactory;
+        this.releasedDocument = releasedDocument;
+        this.journal = journal;
+
+        documentLoader.addListener(modifiedUpdater);
+        documentFileOptionalProperty().addListener((observable, oldValue, newValue) ->
+                metrics.setDocumentName(newValue.map(File::getName).orElse("Untitled")));
+        metrics.register();
+
+        if (releasedDocument == null) {
+            attachEditor(codeEditorFactory.get());
+        } else {
+            setDocumentFileOptional(releasedDocument.getFileOptional());
+        }
+        updateModified();
+    }
+
+    /**
+     * @return the editor of the document, or null while released
+     */
+    public ReadOnlyObjectProperty<CodeArea> codeEditorProperty() {
+        return codeEditor.getReadOnlyProperty();
+    }
+
+    public CodeArea getCodeEditor() {
+        return codeEditor.get();
+    }
+
+    /**
+     * @return the metrics of the document, registered with JMX until the workspace is disposed
+     */
+    public EditorMetrics getMetrics() {
+        return metrics;
+    }
+
+    public boolean isEditorReleased() {
+        return codeEditor.get() == null;
+    }
+
+    /**
+     * @return true if the document is untitled, unmodified and empty - so it can be replaced at no loss
+     */
+    public boolean isBlank() {
+        CodeArea editor = codeEditor.get();
+        return getDocumentFileOptional().isEmpty() && !isModified() && !isLoading() && editor != null && editor.getLength() == 0;
+    }
+
+    /**
+     * The editor cannot be released while the document is being loaded or saved;
+     * large files are already shown without it
+     */
+    public boolean canReleaseEditor() {
+        return codeEditor.get() != null && !isLoading() && !isLargeFileOpen() && latestSave.isDone();
+    }
+
+    /**
+     * Replaces the editor - with its paragraphs, styles and undo history - by a descriptor
+     * of the document; only the text of a modified document is retained.
+     */
+    public void releaseEditor() {
+        if (!canReleaseEditor()) {
+            throw new IllegalStateException("The editor cannot be released now");
+        }
+
+        releasedDocument = describeDocument();
+        detachEditor();
+        updateModified();
+    }
+
+    /**
+     * Rebuilds the released editor, if any: the retained text is restored at once,
+     * while an unmodified document is loaded again from its file
+     */
+    public void restoreEditor() {
+        if (codeEditor.get() != null) {
+            return;
+        }
+
+        DocumentDescriptor descriptor = releasedDocument;
+        releasedDocument = null;
+
+        CodeArea editor = codeEditorFactory.get();
+        attachEditor(editor);
+
+        if (descriptor.isModified()) {
+            // The journal already leads to the retained text
+            journalSuspended = true;
+            editor.replaceText(descriptor.getUnsavedText());
+            journalSuspended = false;
+            // Without history, the undo manager is no longer at its marked position: the document stays modified
+            editor.getUndoManager().forgetHistory();
+            showPosition(editor, descriptor.getCaretPosition(), descriptor.getTopParagraph());
+        } else if (descriptor.getFileOptional().isPresent()) {
+            startLoading(
+                    descriptor.getFileOptional().get(),
+                    descriptor.getCaretPosition(),
+                    descriptor.getTopParagraph(),
+                    descriptor.getValidHighlightingOptional().orElse(null)
+            );
+        }
+
+        updateModified();
+    }
+
+    /**
+     * @return the state of the document as it would be released now, or as it was released;
+     * the styles of an unmodified document are included, once computed
+     */
+    public DocumentDescriptor describeDocument() {
+        CodeArea editor = codeEditor.get();
+        if (editor == null) {
+            return releasedDocument;
+        }
+
+        HighlightSnapshot highlighting = null;
+        if (!isModified() && !isLoading() && !isLargeFileOpen() && editor instanceof StyledCodeEditor) {
+            highlighting = ((StyledCodeEditor) editor).snapshotHighlighting().orElse(null);
+        }
+
+        int topParagraph = editor.getVisibleParagraphs().isEmpty() ? 0 : editor.firstVisibleParToAllParIndex();
+        return new DocumentDescriptor(
+                getDocumentFileOptional().orElse(null),
+                editor.getCaretPosition(),
+                topParagraph,
+                isModified() ? editor.getText() : null,
+                fileSize,
+                fileModified,
+                highlighting
+        );
+    }
+
+    /**
+     * Stops any background work of the document, which must not be used afterwards;
+     * its unsaved edits, if any, are no longer recoverable
+     */
+    public void dispose() {
+        cancelLoading();
+        closeLargeFile();
+        if (codeEditor.get() != null) {
+            detachEditor();
+        }
+        releasedDocument = null;
+
+        if (journal != null) {
+            journal.close();
+        }
+        metrics.unregister();
+    }
+
+    private void attachEditor(CodeArea editor) {
+        // Comparing undo positions costs nothing per edit, and recognizes undoing back to the saved text
+        editor.getUndoManager().atMarkedPositionProperty().addListener(modifiedUpdater);
+        if (journal != null) {
+            journalSubscription = editor.plainTextChanges().subscribe(this::journalChange);
+        }
+        if (editor instanceof StyledCodeEditor) {
+            ((StyledCodeEditor) editor).setMetrics(metrics);
+        }
+        codeEditor.set(editor);
+    }
+
+    private void detachEditor() {
+        CodeArea editor = codeEditor.get();
+        codeEditor.set(null);
+
+        editor.getUndoManager().atMarkedPositionProperty().removeListener(modifiedUpdater);
+        if (journalSubscription != null) {
+            journalSubscription.unsubscribe();
+            journalSubscription = null;
+        }
+        editor.getUndoManager().close();
+        if (editor instanceof StyledCodeEditor) {
+            ((StyledCodeEditor) editor).clearSearch();
+            ((StyledCodeEditor) editor).stopStyling();
+            ((StyledCodeEditor) editor).setMetrics(null);
+        }
+    }
+
+    /**
+     * New and opened documents replace the released one, if any
+     */
+    private CodeArea replaceReleasedEditor() {
+        if (codeEditor.get() == null) {
+            releasedDocument = null;
+            attachEditor(codeEditorFactory.get());
+        }
+        return codeEditor.get();
+    }
+
+    private static void showPosition(CodeArea editor, int caretPosition, int topParagraph) {
+        editor.moveTo(Math.min(caretPosition, editor.getLength()));
+        editor.showParagraphAtTop(Math.min(topParagraph, editor.getParagraphs().size() - 1));
+    }
+
+    /**
+     * @return the task loading the current document, or null if no document is being loaded
+     */
+    public ReadOnlyObjectProperty<DocumentLoader> documentLoaderProperty() {
+        return documentLoader;
+    }
+
+    public boolean isLoading() {
+        return documentLoader.get() != null;
+    }
+
+    /**
+     * Stops loading the current document, if any, leaving an empty untitled document
+     */
+    public void cancelLoading() {
+        DocumentLoader loader = documentLoader.get();
+        if (loader != null) {
+            loader.cancel();
+        }
+    }
+
+    /**
+     * @return the view showing the current document, when it is a large file; null otherwise
+     */
+    public ReadOnlyObjectProperty<LargeFileView> largeFileViewProperty() {
+        return largeFileView;
+    }
+
+    public boolean isLargeFileOpen() {
+        return largeFileView.get() != null;
     }
 
     @Override
     protected boolean doNew() {
-        codeEditor.clear();
-        codeEditor.getUndoManager().forgetHistory();
-        codeEditor.requestFocus();
+        cancelLoading();
+        closeLargeFile();
+
+        CodeArea editor = replaceReleasedEditor();
+        editor.clear();
+        editor.getUndoManager().forgetHistory();
+        editor.requestFocus();
         return true;
     }
 
+    /**
+     * Starts loading the file in the background: the editor is filled progressively,
+     * and stays read-only until loading ends.
+     */
     @Override
     protected boolean doOpen(File sourceFile) {
+        cancelLoading();
+        closeLargeFile();
+        replaceReleasedEditor();
+
+        return startLoading(sourceFile, 0, 0, null);
+    }
+
+    /**
+     * @param caretPosition the position of the caret once loaded
+     * @param topParagraph  the first paragraph shown once loaded
+     * @param highlighting  the styles of the file, known to be unchanged; null to style it as usual
+     */
+    private boolean startLoading(File sourceFile, int caretPosition, int topParagraph, HighlightSnapshot highlighting) {
+        if (sourceFile.length() > LARGE_FILE_THRESHOLD) {
+            return openLargeFile(sourceFile);
+        }
+
+        CodeArea editor = codeEditor.get();
+        editor.clear();
+        editor.setEditable(false);
+
+        DocumentLoader loader = new DocumentLoader(sourceFile.toPath(), StandardCharsets.UTF_8, editor);
+        loader.setOnSucceeded(event -> finishLoading(loader, true, caretPosition, topParagraph, highlighting));
+        loader.setOnCancelled(event -> finishLoading(loader, false, 0, 0, null));
+        loader.setOnFailed(event -> {
+            finishLoading(loader, false, 0, 0, null);
+            showException(loader.getException());
+        });
+
+        documentLoader.set(loader);
+        openEvent = new PerformanceEvents.FileOpen();
+        openEvent.path = sourceFile.getPath();
+        openEvent.bytes = sourceFile.length();
+        openEvent.begin();
+        loadingStartNanos = System.nanoTime();
+        IO_EXECUTOR.execute(loader);
+
+        return true;
+    }
+
+    /**
+     * Maps the file and shows it read-only, while its lines are indexed in the background
+     */
+    private boolean openLargeFile(File sourceFile) {
+        LargeFileDocument document;
         try {
-            String fileContent = new String(Files.readAllBytes(sourceFile.toPath()), StandardCharsets.UTF_8);
-//            codeEditor.setText(fileContent);
-            codeEditor.clear();
-            codeEditor.replaceText(0, 0, fileContent);
-            codeEditor.getUndoManager().forgetHistory();
-            codeEditor.requestFocus();
-            return true;
+            document = new LargeFileDocument(sourceFile.toPath(), StandardCharsets.UTF_8);
         } catch (IOException e) {
-            e.printStackTrace();
+            showException(e);
             return false;
         }
+
+        CodeArea editor = codeEditor.get();
+        editor.clear();
+        editor.getUndoManager().forgetHistory();
+        editor.setEditable(false);
+
+        LargeFileView view = new LargeFileView(
+                document,
+                editor instanceof StyledCodeEditor ? ((StyledCodeEditor) editor).getSyntaxLexer() : null
+        );
+
+        Task<Void> indexer = new Task<>() {
+            @Override
+            protected Void call() {
+                document.indexLines(
+                        scannedBytes -> {
+                            updateProgress(scannedBytes, document.getSize());
+                            Platform.runLater(view::updateLineCount);
+                        },
+                        this::isCancelled
+                );
+                return null;
+            }
+        };
+        indexer.setOnFailed(event -> showException(indexer.getException()));
+
+        lineIndexer = indexer;
+        largeFileView.set(view);
+        IO_EXECUTOR.execute(indexer);
+
+        return true;
     }
 
-    @Override
-    protected boolean doSave(File targetFile) {
+    private void closeLargeFile() {
+        LargeFileView view = largeFileView.get();
+        if (view == null) {
+            return;
+        }
+
+        lineIndexer.cancel();
+        lineIndexer = null;
+        largeFileView.set(null);
+        if (codeEditor.get() != null) {
+            codeEditor.get().setEditable(true);
+        }
+
         try {
-            Files.write(targetFile.toPath(), codeEditor.getText().getBytes(StandardCharsets.UTF_8));
-            return true;
+            view.getDocument().close();
         } catch (IOException e) {
             e.printStackTrace();
-            return false;
         }
     }
+
+    private void finishLoading(DocumentLoader loader, boolean loaded, int caretPosition, int topParagraph, HighlightSnapshot highlighting) {
+        if (documentLoader.get() != loader) {
+            return;
+        }
+
+        CodeArea editor = codeEditor.get();
+
+        if (!loaded) {
+            editor.clear();
+            setDocumentFileOptional(Optional.empty());
+        } else if (highlighting != null && editor instanceof StyledCodeEditor) {
+            // Styling only starts once the appended batches pause, so the lexer has not run yet
+            ((StyledCodeEditor) editor).restoreHighlighting(highlighting);
+        }
+
+        editor.setEditable(true);
+        editor.getUndoManager().forgetHistory();
+        showPosition(editor, caretPosition, topParagraph);
+        editor.requestFollowCaret();
+        editor.requestFocus();
+
+        getCurrentRevision().markSaved();
+        documentLoader.set(null);
+
+        if (loaded) {
+            metrics.recordFileOpen(System.nanoTime() - loadingStartNanos);
+            openEvent.end();
+            openEvent.commit();
+        }
+        openEvent = null;
+    }
+
+    private void updateModified() {
+        CodeArea editor = codeEditor.get();
+
+        if (editor == null) {
+            setModified(releasedDocument != null && releasedDocument.isModified());
+        } else {
+            setModified(!isLoading() && !editor.getUndoManager().isAtMarkedPosition());
+
+            // The text matches its file again - or the empty new document: there is nothing to recover
+            if (journal != null && !isLoading() && !isModified()) {
+                journal.reset(getDocumentFileOptional().orElse(null));
+            }
+        }
+    }
+
+    /**
+     * Loading is not journaled: the loaded file is the base of the journal
+     */
+    private void journalChange(PlainTextChange change) {
+        if (journalSuspended || isLoading()) {
+            return;
+        }
+
+        journal.append(change.getPosition(), change.getRemoved().length(), change.getInserted());
+
+        if (journal.isCompactionDue()) {
+            journal.compact(getDocumentFileOptional().orElse(null), codeEditor.get().getContent().snapshot());
+        }
+    }
+
+    /**
+     * Writes a snapshot of the document in the background, so that editing can go on meanwhile.
+     * Saves are written one after the other, the latest one replacing the file last.
+     */
+    @Override
+    protected CompletableFuture<Revision> doSave(File targetFile) {
+        if (isLargeFileOpen()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Large files are opened read-only"));
+        }
+
+        restoreEditor();
+        if (isLoading()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The document is being loaded"));
+        }
+
+        StyledDocument<?, ?, ?> snapshot = codeEditor.get().getContent().snapshot();
+        Revision revision = getCurrentRevision();
+
+        CompletableFuture<Revision> saved = latestSave
+                .handle((previousRevision, ex) -> null)
+                .thenApplyAsync(ignored -> {
+                    try {
+                        PerformanceEvents.FileSave event = new PerformanceEvents.FileSave();
+                        event.begin();
+                        long startNanos = System.nanoTime();
+                        DocumentSaver.save(snapshot, targetFile.toPath(), StandardCharsets.UTF_8);
+                        metrics.recordFileSave(System.nanoTime() - startNanos);
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.path = targetFile.getPath();
+                            event.bytes = targetFile.length();
+                            event.commit();
+                        }
+                        return revision;
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, IO_EXECUTOR);
+
+        latestSave = saved;
+        return saved;
+    }
+
+    private void updateFileStamp() {
+        File file = getDocumentFileOptional().orElse(null);
+        fileSize = file != null ? file.length() : -1;
+        fileModified = file != null ? file.lastModified() : 0;
+    }
+
+    /**
+     * Later edits never merge into the latest undoable change, so that its position
+     * keeps identifying this very content
+     */
+    @Override
+    protected Revision getCurrentRevision() {
+        if (codeEditor.get() == null) {
+            return () -> {
+            };
+        }
+
+        UndoManager<?> undoManager = codeEditor.get().getUndoManager();
+        undoManager.preventMerge();
+        UndoManager.UndoPosition position = undoManager.getCurrentPosition();
+
+        return () -> {
+            if (position.isValid()) {
+                position.mark();
+            }
+            updateFileStamp();
+
+            // Edited while being saved: the journal no longer starts from the file, which was replaced
+            if (journal != null && isModified() && codeEditor.get() != null) {
+                journal.compact(getDocumentFileOptional().orElse(null), codeEditor.get().getContent().snapshot());
+            }
+        };
+    }
 }
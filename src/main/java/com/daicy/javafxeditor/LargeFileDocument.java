@@ -0,0 +1,205 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Read-only view of a file too large to be held in memory.
+ * <p>
+ * The file is memory-mapped, so its pages are loaded - and evicted - by the operating system;
+ * a sparse index records the offset of one line every LINE_INDEX_INTERVAL lines, and any other line
+ * is found by scanning forward from the closest indexed one.
+ * <p>
+ * The index is built by indexLines(), usually in the background; meanwhile, lines can
+ * already be read up to the indexed line count. Reading lines is meant for a single thread.
+ */
+final class LargeFileDocument implements AutoCloseable {
+
+    /**
+     * Number of lines between two offsets recorded by the index
+     */
+    static final int LINE_INDEX_INTERVAL = 256;
+
+    /**
+     * Lines longer than this number of bytes are truncated when read
+     */
+    static final int MAX_LINE_BYTES = 16 * 1024;
+
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private final Charset charset;
+
+    private volatile long[] lineIndex = new long[1024];
+    private volatile int lineCount = 0;
+    private volatile boolean indexed = false;
+
+    private int cachedLine = -1;
+    private long cachedLineStart;
+
+    /**
+     * @param path    the file to map
+     * @param charset the charset of the file, which must encode '\n' as a single byte
+     */
+    LargeFileDocument(Path path, Charset charset) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.charset = charset;
+
+        try {
+            this.size = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                long segmentStart = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, Math.min(SEGMENT_SIZE, size - segmentStart));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of lines indexed so far
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Scans the whole file, recording the sparse line index.
+     *
+     * @param progress  receives the number of bytes scanned, from time to time
+     * @param cancelled tells whether indexing should stop
+     */
+    public void indexLines(LongConsumer progress, BooleanSupplier cancelled) {
+        long[] index = lineIndex;
+        int lines = 1;
+        index[0] = 0;
+
+        for (int segment = 0; segment < segments.length; segment++) {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+
+            MappedByteBuffer buffer = segments[segment];
+            long segmentStart = segment * SEGMENT_SIZE;
+            int segmentLength = buffer.limit();
+
+            for (int i = 0; i < segmentLength; i++) {
+                if (buffer.get(i) != '\n') {
+                    continue;
+                }
+
+                long lineStart = segmentStart + i + 1;
+                if (lines % LINE_INDEX_INTERVAL == 0) {
+                    int slot = lines / LINE_INDEX_INTERVAL;
+                    if (slot == index.length) {
+                        index = Arrays.copyOf(index, index.length * 2);
+                        lineIndex = index;
+                    }
+                    index[slot] = lineStart;
+                }
+                lines++;
+
+                if ((lines & 0xFFFF) == 0) {
+                    // Published once the index covers the new lines
+                    lineCount = lines;
+                    progress.accept(lineStart);
+                    if (cancelled.getAsBoolean()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        lineCount = lines;
+        indexed = true;
+        progress.accept(size);
+    }
+
+    /**
+     * @param line the line, less than the indexed line count
+     * @return the text of the line, without its terminator; possibly truncated to MAX_LINE_BYTES
+     */
+    public String getLine(int line) {
+        if (line < 0 || line >= lineCount) {
+            throw new IndexOutOfBoundsException("Line " + line + " out of " + lineCount);
+        }
+
+        long start = getLineStart(line);
+        long end = start;
+        long limit = Math.min(size, start + MAX_LINE_BYTES);
+        while (end < limit && byteAt(end) != '\n') {
+            end++;
+        }
+
+        cachedLine = line + 1;
+        cachedLineStart = end < limit ? end + 1 : findNextLineStart(end);
+
+        if (end > start && byteAt(end - 1) == '\r') {
+            end--;
+        }
+
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    private long getLineStart(int line) {
+        if (line == cachedLine) {
+            return cachedLineStart;
+        }
+
+        int indexedLine = line - line % LINE_INDEX_INTERVAL;
+        long position = lineIndex[indexedLine / LINE_INDEX_INTERVAL];
+
+        // Scanning from the cached line, when it is closer
+        if (cachedLine > indexedLine && cachedLine < line) {
+            indexedLine = cachedLine;
+            position = cachedLineStart;
+        }
+
+        for (int i = indexedLine; i < line; i++) {
+            position = findNextLineStart(position);
+        }
+        return position;
+    }
+
+    private long findNextLineStart(long position) {
+        while (position < size && byteAt(position) != '\n') {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private byte byteAt(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE));
+    }
+
+    /**
+     * Closes the file; the mapping is released once garbage-collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
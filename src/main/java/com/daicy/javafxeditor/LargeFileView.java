@@ -0,0 +1,143 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.collections.ObservableListBase;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+/**
+ * Read-only, virtualized view of a LargeFileDocument.
+ * <p>
+ * Only the cells of the visible lines exist: each one reads its line from the document
+ * when displayed, and styles it on its own - so memory and styling work are bounded
+ * by the viewport, whatever the size of the file.
+ */
+class LargeFileView extends ListView<Integer> {
+
+    private final LargeFileDocument document;
+    private final SyntaxLexer syntaxLexer;
+    private final LineNumbers lineNumbers = new LineNumbers();
+
+    /**
+     * @param document    the document to show
+     * @param syntaxLexer the lexer styling the visible lines, or null to show plain text
+     */
+    LargeFileView(LargeFileDocument document, SyntaxLexer syntaxLexer) {
+        this.document = document;
+        this.syntaxLexer = syntaxLexer;
+
+        getStyleClass().add("code-area");
+        setItems(lineNumbers);
+        setCellFactory(listView -> new LineCell());
+
+        updateLineCount();
+    }
+
+    public LargeFileDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * Shows the lines indexed since the latest call
+     */
+    public void updateLineCount() {
+        lineNumbers.setSize(document.getLineCount());
+    }
+
+    private class LineCell extends ListCell<Integer> {
+        private final Label lineNumberLabel = new Label();
+        private final TextFlow textFlow = new TextFlow();
+        private final HBox graphic = new HBox(lineNumberLabel, textFlow);
+
+        LineCell() {
+            lineNumberLabel.getStyleClass().add("lineno");
+            lineNumberLabel.setPadding(new Insets(0, 8, 0, 4));
+            setPadding(Insets.EMPTY);
+        }
+
+        @Override
+        protected void updateItem(Integer line, boolean empty) {
+            super.updateItem(line, empty);
+
+            if (empty || line == null) {
+                setGraphic(null);
+                return;
+            }
+
+            lineNumberLabel.setText(Integer.toString(line + 1));
+            textFlow.getChildren().setAll(styleLine(document.getLine(line)));
+            setGraphic(graphic);
+        }
+    }
+
+    /**
+     * Styles a line on its own: unlike in the editor, constructs spanning several lines are not recognized
+     */
+    private Text[] styleLine(String text) {
+        if (syntaxLexer == null || syntaxLexer.isEmpty()) {
+            return new Text[]{new Text(text)};
+        }
+
+        List<Text> nodes = new ArrayList<>();
+        SyntaxLexer.Scanner scanner = syntaxLexer.scanner(text);
+        int position = 0;
+
+        while (scanner.next()) {
+            if (scanner.getStart() > position) {
+                nodes.add(new Text(text.substring(position, scanner.getStart())));
+            }
+
+            Text token = new Text(text.substring(scanner.getStart(), scanner.getEnd()));
+            token.getStyleClass().add(scanner.getStyle().getCssClass());
+            nodes.add(token);
+
+            position = scanner.getEnd();
+        }
+
+        if (position < text.length() || nodes.isEmpty()) {
+            nodes.add(new Text(text.substring(position)));
+        }
+
+        return nodes.toArray(new Text[0]);
+    }
+
+    /**
+     * The list of line indexes, never materialized
+     */
+    private static class LineNumbers extends ObservableListBase<Integer> {
+        private int size = 0;
+
+        void setSize(int newSize) {
+            if (newSize <= size) {
+                return;
+            }
+
+            int oldSize = size;
+            size = newSize;
+
+            beginChange();
+            nextAdd(oldSize, newSize);
+            endChange();
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
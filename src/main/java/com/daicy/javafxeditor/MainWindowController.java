@@ -1,18 +1,29 @@
 package com.daicy.javafxeditor;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 
 import javafx.application.Platform;
-import javafx.beans.Observable;
+import javafx.beans.InvalidationListener;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.BooleanBinding;
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -21,38 +32,114 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
 import org.fxmisc.richtext.CodeArea;
-import org.reactfx.value.Val;
+import org.fxmisc.richtext.model.StyledDocument;
 
 
 public class MainWindowController {
 
     private static final Duration OUTPUT_REFRESH_RATE = Duration.ofMillis(300);
 
+    /**
+     * The FX thread not responding for longer than this is reported as a stall
+     */
+    private static final Duration STALL_THRESHOLD = Duration.ofSeconds(1);
+    private static final long STALL_LOG_MAX_SIZE = 1024 * 1024;
+    private static final int STALL_LOG_MAX_FILES = 3;
+
+    private static final DateTimeFormatter RECORDING_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
     private Stage stage;
     private AppStrategy appStrategy;
 
-    private CodeArea codeEditor;
+    private OutputArea outputArea;
+    private ProcessRunner processRunner;
+    private OutputLog outputLog;
+
+    private HighlightCache highlightCache;
+
+    private final OutputMetrics outputMetrics = new OutputMetrics();
+    private DiagnosticsWindow diagnosticsWindow;
+
+    private final RecentEvents recentEvents = new RecentEvents(64);
+    private FxStallWatchdog stallWatchdog;
 
+    private final PerformanceRecorder performanceRecorder = new PerformanceRecorder();
+
+    /**
+     * The workspace and the editor of the selected tab
+     */
     private JavaFxWorkspace workspace;
+    private CodeArea codeEditor;
 
     private final BooleanProperty runningProperty = new SimpleBooleanProperty(false);
+    private final BooleanProperty savingBeforeRunProperty = new SimpleBooleanProperty(false);
+    private final BooleanProperty outputAvailableProperty = new SimpleBooleanProperty(false);
+
+    // Follow the selected document, so that bindings survive switching tabs
+    private final ObjectProperty<Optional<File>> documentFileOptional = new SimpleObjectProperty<>(Optional.empty());
+    private final BooleanProperty modifiedProperty = new SimpleBooleanProperty(false);
+    private final ObjectProperty<DocumentLoader> documentLoader = new SimpleObjectProperty<>(null);
+    private final ObjectProperty<LargeFileView> largeFileView = new SimpleObjectProperty<>(null);
+    private final BooleanProperty undoAvailableProperty = new SimpleBooleanProperty(false);
+    private final BooleanProperty redoAvailableProperty = new SimpleBooleanProperty(false);
+    private final BooleanProperty selectionEmptyProperty = new SimpleBooleanProperty(true);
+    private final BooleanProperty searchSupportedProperty = new SimpleBooleanProperty(false);
+    private final BooleanBinding loadingBinding = documentLoader.isNotNull();
+    private final BooleanBinding largeFileBinding = largeFileView.isNotNull();
 
 
     private FileChooser sourceFileChooser;
     private FileChooser outputFileChooser;
+    private FileChooser recordingFileChooser;
 
     @FXML
     private BorderPane editorPane;
 
+    @FXML
+    private DocumentTabPane documentTabPane;
+
+    @FXML
+    private BorderPane outputPane;
+
+    @FXML
+    private HBox loadingPane;
+
+    @FXML
+    private ProgressBar loadingProgressBar;
+
     @FXML
     private MenuItem newMenuItem, openMenuItem, saveMenuItem, saveAsMenuItem, undoMenuItem, redoMenuItem,
             cutMenuItem, copyMenuItem, pasteMenuItem, saveOutputMenuItem, startMenuItem, stopMenuItem,
             settingsMenuItem, onlineReferenceMenuItem, aboutMenuItem;
 
+    @FXML
+    private CheckMenuItem teeOutputMenuItem;
+
+    @FXML
+    private MenuItem findMenuItem;
+
+    @FXML
+    private MenuItem recordPerformanceMenuItem;
+
+    @FXML
+    private HBox findPane;
+
+    @FXML
+    private TextField findField, replaceField;
+
+    @FXML
+    private CheckBox regexCheckBox, matchCaseCheckBox;
+
+    @FXML
+    private Label searchStatusLabel;
+
     @FXML
     private Button newButton, openButton, saveButton, saveAsButton, undoButton, redoButton, cutButton, copyButton,
             pasteButton, startButton, stopButton, onlineReferenceButton, aboutButton;
@@ -62,7 +149,6 @@ public class MainWindowController {
         this.appStrategy = appStrategy;
 
         this.sourceFileChooser = appStrategy.createSourceFileChooser();
-        this.codeEditor = appStrategy.createCodeEditor();
 
         this.outputFileChooser = new FileChooser();
         this.outputFileChooser.setTitle(appStrategy.getTitle());
@@ -71,31 +157,380 @@ public class MainWindowController {
                 new FileChooser.ExtensionFilter("Any file", "*.*")
         );
 
-        workspace = new JavaFxWorkspace(stage, sourceFileChooser, codeEditor);
-        workspace.bindEvents();
+        this.recordingFileChooser = new FileChooser();
+        this.recordingFileChooser.setTitle(appStrategy.getTitle());
+        this.recordingFileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Flight recording", "*.jfr")
+        );
 
-        editorPane.setCenter(codeEditor);
+        this.highlightCache = appStrategy.getHighlightCacheDirectory()
+                .map(directory -> new HighlightCache(directory, HighlightCache.DEFAULT_MAX_SIZE))
+                .orElse(null);
+
+        outputArea = new OutputArea(appStrategy.getMaxOutputLines());
+        outputPane.setCenter(outputArea);
+        outputMetrics.register();
+
+        appStrategy.getDiagnosticsLogFile().ifPresent(logFile -> {
+            stallWatchdog = new FxStallWatchdog(
+                    STALL_THRESHOLD,
+                    recentEvents,
+                    new RotatingLog(logFile, STALL_LOG_MAX_SIZE, STALL_LOG_MAX_FILES)
+            );
+            stallWatchdog.start();
+        });
 
         initBindings();
+
+        documentTabPane.getSelectionModel().selectedItemProperty().addListener((observable, oldTab, newTab) -> {
+            if (newTab != null) {
+                selectDocument((DocumentTab) newTab);
+            }
+        });
+        boolean recovered = recoverDocuments();
+        boolean restored = restoreSession();
+        if (!recovered && !restored) {
+            newDocument(null);
+        }
+    }
+
+    private JavaFxWorkspace createWorkspace(DocumentDescriptor releasedDocument) {
+        EditJournal journal = appStrategy.getRecoveryDirectory().map(EditJournal::create).orElse(null);
+        return new JavaFxWorkspace(stage, sourceFileChooser, this::createCodeEditor, releasedDocument, journal);
+    }
+
+    /**
+     * Styled editors share the highlight cache
+     */
+    private CodeArea createCodeEditor() {
+        CodeArea editor = appStrategy.createCodeEditor();
+        if (editor instanceof StyledCodeEditor) {
+            ((StyledCodeEditor) editor).setHighlightCache(highlightCache);
+        }
+        return editor;
+    }
+
+    /**
+     * Offers to recover the unsaved edits journaled by a session that did not end normally:
+     * each recovered document is shown, still modified, in a tab of its own
+     *
+     * @return true if documents were recovered
+     */
+    private boolean recoverDocuments() {
+        Optional<Path> recoveryDirectory = appStrategy.getRecoveryDirectory();
+        if (recoveryDirectory.isEmpty()) {
+            return false;
+        }
+
+        List<EditJournal.Recovery> recoveries = new ArrayList<>();
+        try {
+            for (Path journalPath : EditJournal.findJournals(recoveryDirectory.get())) {
+                try {
+                    recoveries.add(EditJournal.recover(journalPath));
+                } catch (IOException e) {
+                    Alerts.showWarning(e.getMessage(), "Unsaved changes cannot be recovered");
+                    EditJournal.discard(journalPath);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (recoveries.isEmpty()) {
+            return false;
+        }
+
+        List<String> documentNames = recoveries.stream()
+                .map(recovery -> recovery.getFileOptional().map(File::getPath).orElse("Untitled"))
+                .collect(Collectors.toList());
+
+        if (!Workspace.offerRecovery(documentNames)) {
+            for (EditJournal.Recovery recovery : recoveries) {
+                try {
+                    EditJournal.discard(recovery.getJournal());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            return false;
+        }
+
+        for (EditJournal.Recovery recovery : recoveries) {
+            DocumentDescriptor descriptor = new DocumentDescriptor(recovery.getFileOptional().orElse(null), 0, 0, recovery.getText());
+            JavaFxWorkspace recoveredWorkspace = new JavaFxWorkspace(
+                    stage, sourceFileChooser, this::createCodeEditor, descriptor, EditJournal.resume(recovery));
+            addDocumentTab(new DocumentTab(recoveredWorkspace));
+        }
+        documentTabPane.getSelectionModel().selectFirst();
+
+        return true;
+    }
+
+    /**
+     * Shows again the documents open when the editor was last closed, except those already recovered
+     * and those whose file no longer exists; each document is only loaded once its tab is selected
+     *
+     * @return true if documents were restored
+     */
+    private boolean restoreSession() {
+        Optional<Path> sessionFile = appStrategy.getSessionFile();
+        if (sessionFile.isEmpty()) {
+            return false;
+        }
+
+        Session session;
+        try {
+            Optional<Session> savedSession = Session.load(sessionFile.get());
+            if (savedSession.isEmpty()) {
+                return false;
+            }
+            session = savedSession.get();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        List<DocumentTab> restoredTabs = new ArrayList<>();
+        DocumentTab selectedTab = null;
+        for (int i = 0; i < session.getDocuments().size(); i++) {
+            DocumentDescriptor document = session.getDocuments().get(i);
+            File file = document.getFileOptional().get();
+            if (!file.isFile() || documentTabPane.findDocumentTab(file).isPresent()) {
+                continue;
+            }
+
+            DocumentTab tab = new DocumentTab(createWorkspace(document));
+            restoredTabs.add(tab);
+            if (i == session.getSelectedIndex()) {
+                selectedTab = tab;
+            }
+        }
+
+        if (restoredTabs.isEmpty()) {
+            return false;
+        }
+
+        // The first tab added is selected at once, hence loaded: the selected document goes first
+        int firstIndex = documentTabPane.getTabs().size();
+        if (selectedTab != null) {
+            addDocumentTab(firstIndex, selectedTab);
+        }
+        for (int i = 0; i < restoredTabs.size(); i++) {
+            if (restoredTabs.get(i) != selectedTab) {
+                addDocumentTab(firstIndex + i, restoredTabs.get(i));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers the open documents, with the styles of the unmodified ones, for the next launch
+     */
+    private void saveSession() {
+        Optional<Path> sessionFile = appStrategy.getSessionFile();
+        if (sessionFile.isEmpty()) {
+            return;
+        }
+
+        List<DocumentTab> tabs = documentTabPane.getDocumentTabs();
+        List<DocumentDescriptor> documents = tabs.stream()
+                .map(tab -> tab.getWorkspace().describeDocument())
+                .collect(Collectors.toList());
+
+        try {
+            new Session(documents, tabs.indexOf(documentTabPane.getSelectedDocumentTab())).save(sessionFile.get());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void addDocumentTab(DocumentTab tab) {
+        addDocumentTab(documentTabPane.getTabs().size(), tab);
+    }
+
+    /**
+     * Closing a tab asks whether to save its document; once the last tab is closed, a new document is shown
+     */
+    private void addDocumentTab(int index, DocumentTab tab) {
+        tab.setOnCloseRequest(event -> {
+            documentTabPane.getSelectionModel().select(tab);
+            if (!tab.getWorkspace().canLeaveDocument()) {
+                event.consume();
+            }
+        });
+
+        tab.setOnClosed(event -> {
+            recentEvents.add("Close " + tab.getWorkspace().getMetrics().getDocumentName());
+            tab.getWorkspace().dispose();
+            if (documentTabPane.getTabs().isEmpty()) {
+                newDocument(null);
+            }
+        });
+
+        documentTabPane.getTabs().add(index, tab);
+    }
+
+    /**
+     * Binds the controls to the document of the selected tab, rebuilding its editor if it was released
+     */
+    private void selectDocument(DocumentTab tab) {
+        if (codeEditor instanceof StyledCodeEditor) {
+            ((StyledCodeEditor) codeEditor).clearSearch();
+        }
+
+        workspace = tab.getWorkspace();
+        recentEvents.add("Select " + workspace.getMetrics().getDocumentName());
+        workspace.restoreEditor();
+        codeEditor = workspace.getCodeEditor();
+
+        // Unbinding keeps the current view as the center: it is cleared first, so that it does not retain a released editor
+        editorPane.centerProperty().unbind();
+        editorPane.setCenter(null);
+        editorPane.centerProperty().bind(tab.viewProperty());
+
+        documentFileOptional.bind(workspace.documentFileOptionalProperty());
+        modifiedProperty.bind(workspace.modifiedProperty());
+        documentLoader.bind(workspace.documentLoaderProperty());
+        largeFileView.bind(workspace.largeFileViewProperty());
+        undoAvailableProperty.bind(codeEditor.undoAvailableProperty());
+        redoAvailableProperty.bind(codeEditor.redoAvailableProperty());
+        selectionEmptyProperty.bind(Bindings.createBooleanBinding(
+                () -> codeEditor.getSelectedText().isEmpty(),
+                codeEditor.selectedTextProperty()
+        ));
+        searchSupportedProperty.set(codeEditor instanceof StyledCodeEditor);
+
+        bindSearchStatus();
+
+        if (findPane.isVisible()) {
+            updateSearch();
+        }
     }
 
     private void initBindings() {
         stage.titleProperty().bind(Bindings.createStringBinding(() -> {
             String titleBase = appStrategy.getTitle();
 
-            Optional<String> fileString = workspace.getDocumentFileOptional().map(file -> " - " + file.getName());
-            String modifiedString = workspace.isModified() ? " *" : "";
+            Optional<String> fileString = documentFileOptional.get().map(file -> " - " + file.getName());
+            String modifiedString = modifiedProperty.get() ? " *" : "";
 
             return titleBase + fileString.orElse("") + modifiedString;
-        }, workspace.documentFileOptionalProperty(), workspace.modifiedProperty()));
+        }, documentFileOptional, modifiedProperty));
 
         setupMenusAndToolbar();
 
-        codeEditor.disableProperty().bind(runningProperty);
+        documentTabPane.disableProperty().bind(runningProperty);
+
+        editorPane.centerProperty().addListener((observable, oldView, newView) -> {
+            if (oldView != null) {
+                oldView.disableProperty().unbind();
+            }
+            if (newView != null) {
+                newView.disableProperty().bind(runningProperty);
+            }
+        });
+
+        // Every modified document is offered to be saved, showing its tab meanwhile
+        stage.addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, event -> {
+            for (DocumentTab tab : documentTabPane.getDocumentTabs()) {
+                if (tab.getWorkspace().isModified()) {
+                    documentTabPane.getSelectionModel().select(tab);
+                    if (!tab.getWorkspace().canLeaveDocument()) {
+                        event.consume();
+                        return;
+                    }
+                }
+            }
+        });
+
+        // Programs run from the editor should not outlive it
+        stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> stop(null));
+
+        // Each document was saved or discarded on request: their journals are no longer needed
+        stage.addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> {
+            if (stallWatchdog != null) {
+                stallWatchdog.interrupt();
+            }
+            performanceRecorder.discard();
+            saveSession();
+            for (DocumentTab tab : documentTabPane.getDocumentTabs()) {
+                tab.getWorkspace().dispose();
+            }
+            documentTabPane.dispose();
+        });
+
+        initFindPane();
+
+        loadingPane.visibleProperty().bind(loadingBinding);
+        loadingPane.managedProperty().bind(loadingBinding);
 
-        codeEditor.textProperty().addListener((Observable observable) -> {
-            Platform.runLater(() -> workspace.setModified(true));
+        // Only the kind of plain keystrokes is recorded, not the typed text
+        editorPane.addEventFilter(KeyEvent.KEY_PRESSED, event -> {
+            if (event.isShortcutDown() || event.isAltDown()) {
+                recentEvents.add("Key " + (event.isShortcutDown() ? "Shortcut+" : "") + (event.isAltDown() ? "Alt+" : "") + event.getCode().getName());
+            } else {
+                recentEvents.add("Typing");
+            }
         });
+
+        documentLoader.addListener((observable, oldLoader, newLoader) -> {
+            loadingProgressBar.progressProperty().unbind();
+            recentEvents.add((newLoader != null ? "Loading " : "Loading ended: ") + workspace.getMetrics().getDocumentName());
+            if (newLoader != null) {
+                loadingProgressBar.progressProperty().bind(newLoader.progressProperty());
+            }
+        });
+    }
+
+    /**
+     * Searching is provided by StyledCodeEditor: the query is searched again as it is typed,
+     * each new search cancelling the previous one
+     */
+    private void initFindPane() {
+        findPane.setVisible(false);
+        findPane.setManaged(false);
+
+        findMenuItem.disableProperty().bind(runningProperty.or(largeFileBinding).or(searchSupportedProperty.not()));
+
+        InvalidationListener searchListener = observable -> updateSearch();
+        findField.textProperty().addListener(searchListener);
+        regexCheckBox.selectedProperty().addListener(searchListener);
+        matchCaseCheckBox.selectedProperty().addListener(searchListener);
+    }
+
+    private void bindSearchStatus() {
+        searchStatusLabel.textProperty().unbind();
+        searchStatusLabel.setText("");
+
+        if (!(codeEditor instanceof StyledCodeEditor)) {
+            return;
+        }
+        StyledCodeEditor styledCodeEditor = (StyledCodeEditor) codeEditor;
+
+        searchStatusLabel.textProperty().bind(Bindings.createStringBinding(
+                () -> findField.getText().isEmpty()
+                        ? ""
+                        : styledCodeEditor.getSearchHitCount() + (styledCodeEditor.isSearching() ? "+ hits" : " hits"),
+                styledCodeEditor.searchHitCountProperty(),
+                styledCodeEditor.searchingProperty(),
+                findField.textProperty()
+        ));
+    }
+
+    private void updateSearch() {
+        if (!(codeEditor instanceof StyledCodeEditor)) {
+            return;
+        }
+        StyledCodeEditor styledCodeEditor = (StyledCodeEditor) codeEditor;
+
+        try {
+            styledCodeEditor.find(findField.getText(), regexCheckBox.isSelected(), matchCaseCheckBox.isSelected());
+            findField.setStyle("");
+        } catch (PatternSyntaxException e) {
+            styledCodeEditor.clearSearch();
+            findField.setStyle("-fx-text-fill: firebrick;");
+        }
     }
 
     private void setupMenusAndToolbar() {
@@ -104,32 +539,39 @@ public class MainWindowController {
         openMenuItem.disableProperty().bind(runningProperty);
         bindButton(openButton, openMenuItem);
 
-        saveMenuItem.disableProperty().bind(runningProperty.or(workspace.modifiedProperty().not()));
+        // Saving a document while it is being loaded would truncate it; large files are read-only
+        saveMenuItem.disableProperty().bind(runningProperty.or(modifiedProperty.not()).or(loadingBinding).or(largeFileBinding));
         bindButton(saveButton, saveMenuItem);
 
-        saveAsMenuItem.disableProperty().bind(runningProperty);
+        saveAsMenuItem.disableProperty().bind(runningProperty.or(loadingBinding).or(largeFileBinding));
         bindButton(saveAsButton, saveAsMenuItem);
 
-        undoMenuItem.disableProperty().bind(runningProperty.or(adapt(codeEditor.undoAvailableProperty())));
+        undoMenuItem.disableProperty().bind(runningProperty.or(undoAvailableProperty.not()));
         bindButton(undoButton, undoMenuItem);
 
-        redoMenuItem.disableProperty().bind(runningProperty.or(adapt(codeEditor.redoAvailableProperty())));
+        redoMenuItem.disableProperty().bind(runningProperty.or(redoAvailableProperty.not()));
         bindButton(redoButton, redoMenuItem);
 
-        BooleanBinding noSelectedCodeText = Bindings.createBooleanBinding(
-                () -> codeEditor.getSelectedText().isEmpty(),
-                codeEditor.selectedTextProperty()
-        );
-        cutMenuItem.disableProperty().bind(noSelectedCodeText.or(runningProperty));
+        cutMenuItem.disableProperty().bind(selectionEmptyProperty.or(runningProperty));
         bindButton(cutButton, cutMenuItem);
 
-        copyMenuItem.disableProperty().bind(noSelectedCodeText.or(runningProperty));
+        copyMenuItem.disableProperty().bind(selectionEmptyProperty.or(runningProperty));
         bindButton(copyButton, copyMenuItem);
 
         pasteMenuItem.disableProperty().bind(runningProperty);
         bindButton(pasteButton, pasteMenuItem);
 
 
+        startMenuItem.disableProperty().bind(runningProperty.or(savingBeforeRunProperty).or(loadingBinding).or(largeFileBinding));
+        bindButton(startButton, startMenuItem);
+
+        stopMenuItem.disableProperty().bind(runningProperty.not());
+        bindButton(stopButton, stopMenuItem);
+
+        teeOutputMenuItem.disableProperty().bind(runningProperty);
+        saveOutputMenuItem.disableProperty().bind(runningProperty.or(outputAvailableProperty.not()));
+
+
         settingsMenuItem.setVisible(appStrategy.settingsSupported());
 //        disableWhenRunning(settingsMenuItem, null);
         settingsMenuItem.disableProperty().bind(runningProperty);
@@ -140,12 +582,6 @@ public class MainWindowController {
         bindButton(aboutButton, aboutMenuItem);
     }
 
-    public static ReadOnlyBooleanProperty adapt(Val<Boolean> val) {
-        SimpleBooleanProperty property = new SimpleBooleanProperty();
-        property.set(val.getValue());
-        return property;
-    }
-
 //    private void disableWhenRunning(MenuItem menuItem, Button button) {
 //        menuItem.disableProperty().bind(runningProperty);
 //        if (button != null) {
@@ -175,24 +611,64 @@ public class MainWindowController {
 
     @FXML
     private void newDocument(ActionEvent event) {
-        workspace.newDocument();
+        recentEvents.add("New document");
+        DocumentTab tab = new DocumentTab(createWorkspace(null));
+        addDocumentTab(tab);
+        documentTabPane.getSelectionModel().select(tab);
     }
 
+    /**
+     * Each chosen file is shown in its own tab - its existing one, if already open.
+     * New tabs are loaded when first selected, so only the first chosen file is loaded at once.
+     */
     @FXML
     private void openDocument(ActionEvent event) {
-        workspace.openDocument();
+        List<File> selectedFiles = sourceFileChooser.showOpenMultipleDialog(stage);
+        if (selectedFiles == null) {
+            return;
+        }
+        recentEvents.add("Open " + selectedFiles.stream().map(File::getName).collect(Collectors.joining(", ")));
+
+        DocumentTab firstTab = null;
+        for (File selectedFile : selectedFiles) {
+            DocumentTab tab = documentTabPane.findDocumentTab(selectedFile).orElse(null);
+
+            if (tab == null && firstTab == null && workspace.isBlank()) {
+                if (workspace.openDocument(selectedFile)) {
+                    tab = documentTabPane.getSelectedDocumentTab();
+                }
+            } else if (tab == null) {
+                tab = new DocumentTab(createWorkspace(DocumentDescriptor.of(selectedFile)));
+                addDocumentTab(tab);
+            }
+
+            if (firstTab == null) {
+                firstTab = tab;
+            }
+        }
+
+        if (firstTab != null) {
+            documentTabPane.getSelectionModel().select(firstTab);
+        }
     }
 
     @FXML
     private void saveDocument(ActionEvent event) {
+        recentEvents.add("Save " + workspace.getMetrics().getDocumentName());
         workspace.saveDocument();
     }
 
     @FXML
     private void saveAsDocument(ActionEvent event) {
+        recentEvents.add("Save as " + workspace.getMetrics().getDocumentName());
         workspace.saveAsDocument();
     }
 
+    @FXML
+    private void cancelLoading(ActionEvent event) {
+        workspace.cancelLoading();
+    }
+
     @FXML
     private void exitProgram(ActionEvent event) {
         workspace.closeStage();
@@ -200,35 +676,254 @@ public class MainWindowController {
 
     @FXML
     private void undo(ActionEvent event) {
+        recentEvents.add("Undo");
         codeEditor.undo();
     }
 
     @FXML
     private void redo(ActionEvent event) {
+        recentEvents.add("Redo");
         codeEditor.redo();
     }
 
     @FXML
     private void cut(ActionEvent event) {
+        recentEvents.add("Cut");
         codeEditor.cut();
     }
 
     @FXML
     private void copy(ActionEvent event) {
+        recentEvents.add("Copy");
         codeEditor.copy();
     }
 
     @FXML
     private void paste(ActionEvent event) {
+        recentEvents.add("Paste");
         codeEditor.paste();
     }
 
     @FXML
     private void selectAll(ActionEvent event) {
+        recentEvents.add("Select all");
         codeEditor.selectAll();
     }
 
 
+    /**
+     * Saves the document if needed, then runs it: its output is shown while running,
+     * followed by its exit code. The document is saved in the background, the run starting once it is written.
+     */
+    @FXML
+    private void start(ActionEvent event) {
+        recentEvents.add("Run " + workspace.getMetrics().getDocumentName());
+        if (!workspace.isModified() && workspace.getDocumentFileOptional().isPresent()) {
+            run(workspace.getDocumentFileOptional().get());
+            return;
+        }
+
+        // The run follows the saved document, even if another tab is selected meanwhile
+        JavaFxWorkspace savedWorkspace = workspace;
+        savingBeforeRunProperty.set(true);
+        savedWorkspace.saveDocumentAsync().thenAccept(saved -> {
+            savingBeforeRunProperty.set(false);
+            if (saved) {
+                run(savedWorkspace.getDocumentFileOptional().orElseThrow());
+            }
+        });
+    }
+
+    private void run(File sourceFile) {
+        Optional<List<String>> runCommand = appStrategy.getRunCommand(sourceFile);
+        if (runCommand.isEmpty()) {
+            Alerts.showWarning("No program is known to run '" + sourceFile.getName() + "'", "Cannot run the document");
+            return;
+        }
+
+        OutputLog log;
+        try {
+            log = createOutputLog();
+        } catch (IOException e) {
+            Alerts.showException(e, "Cannot create the output file", Alert.AlertType.ERROR);
+            return;
+        }
+        if (log == null) {
+            return;
+        }
+
+        deleteOutputLog();
+        outputLog = log;
+        outputAvailableProperty.set(false);
+
+        outputArea.clear();
+        OutputBuffer outputBuffer = new OutputBuffer(appStrategy.getMaxOutputLines(), log);
+        OutputThread outputThread = new OutputThread(OUTPUT_REFRESH_RATE, outputBuffer, outputArea::appendOutput, outputMetrics);
+
+        ProcessRunner runner;
+        try {
+            runner = ProcessRunner.start(runCommand.get(), sourceFile.getAbsoluteFile().getParentFile(), outputBuffer);
+        } catch (IOException e) {
+            deleteOutputLog();
+            Alerts.showException(e, "Cannot run the document", Alert.AlertType.ERROR);
+            return;
+        }
+
+        processRunner = runner;
+        runningProperty.set(true);
+        outputThread.start();
+
+        runner.exitCodeFuture().whenComplete((exitCode, ex) -> {
+            outputBuffer.endLine();
+            if (ex != null) {
+                outputBuffer.append("[Output interrupted: " + ex.getMessage() + "]\n");
+            } else if (runner.isStopRequested()) {
+                outputBuffer.append("[Process stopped, exit code " + exitCode + "]\n");
+            } else {
+                outputBuffer.append("[Process exited with code " + exitCode + "]\n");
+            }
+
+            IOException logFailure;
+            try {
+                log.close();
+                logFailure = log.getFailure();
+            } catch (IOException e) {
+                logFailure = e;
+            }
+            if (logFailure != null) {
+                outputBuffer.append("[Output file incomplete: " + logFailure.getMessage() + "]\n");
+            }
+
+            // The thread delivers the remaining output before ending
+            outputThread.interrupt();
+
+            Platform.runLater(() -> {
+                if (processRunner == runner) {
+                    processRunner = null;
+                    runningProperty.set(false);
+                    outputAvailableProperty.set(true);
+                }
+            });
+        });
+    }
+
+    /**
+     * The whole output of a run is written to a file while running: the file chosen by the user
+     * when teeing, a temporary spill file otherwise - so saving it never depends on the output pane.
+     *
+     * @return the log, or null if the user cancelled the choice of the file
+     */
+    private OutputLog createOutputLog() throws IOException {
+        if (!teeOutputMenuItem.isSelected()) {
+            return OutputLog.createTemporary(StandardCharsets.UTF_8);
+        }
+
+        File teeFile = outputFileChooser.showSaveDialog(stage);
+        if (teeFile == null) {
+            return null;
+        }
+        return OutputLog.create(teeFile.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private void deleteOutputLog() {
+        if (outputLog == null) {
+            return;
+        }
+
+        try {
+            outputLog.delete();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        outputLog = null;
+    }
+
+    /**
+     * Copies the output of the latest run in the background, from its log; if the log is incomplete,
+     * the lines retained by the output pane are saved instead
+     */
+    @FXML
+    private void saveOutput(ActionEvent event) {
+        File targetFile = outputFileChooser.showSaveDialog(stage);
+        if (targetFile == null) {
+            return;
+        }
+
+        OutputLog log = outputLog;
+        StyledDocument<?, ?, ?> retainedOutput = outputArea.getContent().snapshot();
+
+        Thread outputSaver = new Thread(() -> {
+            try {
+                Path targetPath = targetFile.toPath();
+
+                if (log != null && log.getFailure() == null) {
+                    // The tee file might be chosen again
+                    if (!Files.exists(targetPath) || !Files.isSameFile(log.getPath(), targetPath)) {
+                        log.copyTo(targetPath);
+                    }
+                } else {
+                    DocumentSaver.save(retainedOutput, targetPath, StandardCharsets.UTF_8);
+                }
+            } catch (IOException e) {
+                Platform.runLater(() -> Alerts.showException(e, "Cannot save the output", Alert.AlertType.ERROR));
+            }
+        }, "Output saver");
+        outputSaver.setDaemon(true);
+        outputSaver.start();
+    }
+
+    @FXML
+    private void stop(ActionEvent event) {
+        recentEvents.add("Stop");
+        if (processRunner != null) {
+            processRunner.stop();
+        }
+    }
+
+    @FXML
+    private void showFindPane(ActionEvent event) {
+        findPane.setVisible(true);
+        findPane.setManaged(true);
+
+        String selectedText = codeEditor.getSelectedText();
+        if (!selectedText.isEmpty() && selectedText.indexOf('\n') < 0) {
+            findField.setText(selectedText);
+        }
+
+        findField.requestFocus();
+        findField.selectAll();
+        updateSearch();
+    }
+
+    @FXML
+    private void hideFindPane(ActionEvent event) {
+        findPane.setVisible(false);
+        findPane.setManaged(false);
+
+        ((StyledCodeEditor) codeEditor).clearSearch();
+        codeEditor.requestFocus();
+    }
+
+    @FXML
+    private void findNext(ActionEvent event) {
+        ((StyledCodeEditor) codeEditor).findNext();
+    }
+
+    @FXML
+    private void findPrevious(ActionEvent event) {
+        ((StyledCodeEditor) codeEditor).findPrevious();
+    }
+
+    @FXML
+    private void replaceAll(ActionEvent event) {
+        recentEvents.add("Replace all");
+        ((StyledCodeEditor) codeEditor).replaceAll(replaceField.getText()).whenComplete((count, ex) -> {
+            if (ex != null) {
+                Platform.runLater(() -> Alerts.showError(ex.getMessage(), "Cannot replace"));
+            }
+        });
+    }
+
     @FXML
     private void showSettings(ActionEvent event) {
         appStrategy.showSettings();
@@ -239,6 +934,54 @@ public class MainWindowController {
         appStrategy.showOnlineReference();
     }
 
+    @FXML
+    private void showDiagnostics(ActionEvent event) {
+        if (diagnosticsWindow == null) {
+            diagnosticsWindow = new DiagnosticsWindow(stage, () -> workspace.getMetrics(), outputMetrics);
+        }
+        diagnosticsWindow.show();
+        diagnosticsWindow.toFront();
+    }
+
+    /**
+     * Starts a flight recording, or stops it and writes it in the background to the chosen file.
+     * Cancelling the file chooser leaves the recording running.
+     */
+    @FXML
+    private void recordPerformance(ActionEvent event) {
+        if (!performanceRecorder.isRecording()) {
+            try {
+                performanceRecorder.start();
+            } catch (IOException | ParseException | IllegalStateException e) {
+                Alerts.showException(e, "Cannot record the performance", Alert.AlertType.ERROR);
+                return;
+            }
+            recentEvents.add("Recording started");
+            recordPerformanceMenuItem.setText("Stop Recording Performance...");
+            return;
+        }
+
+        recordingFileChooser.setInitialFileName("JavaFxEditor-" + LocalDateTime.now().format(RECORDING_NAME_FORMATTER) + ".jfr");
+        File targetFile = recordingFileChooser.showSaveDialog(stage);
+        if (targetFile == null) {
+            return;
+        }
+
+        PerformanceRecorder.RecordingWriter writer = performanceRecorder.stop();
+        recentEvents.add("Recording stopped");
+        recordPerformanceMenuItem.setText("Record Performance");
+
+        Thread recordingSaver = new Thread(() -> {
+            try {
+                writer.write(targetFile.toPath());
+            } catch (IOException e) {
+                Platform.runLater(() -> Alerts.showException(e, "Cannot save the recording", Alert.AlertType.ERROR));
+            }
+        }, "Recording saver");
+        recordingSaver.setDaemon(true);
+        recordingSaver.start();
+    }
+
     @FXML
     private void showAboutWindow(ActionEvent event) {
         appStrategy.showAboutWindow();
@@ -0,0 +1,42 @@
+package com.daicy.javafxeditor;
+
+import org.fxmisc.richtext.StyleClassedTextArea;
+import org.fxmisc.richtext.util.UndoUtils;
+
+/**
+ * Read-only area showing program output, retaining only its latest lines.
+ */
+public class OutputArea extends StyleClassedTextArea {
+
+    private final int maxLines;
+
+    /**
+     * @param maxLines the maximum number of complete lines shown; older ones are removed
+     */
+    public OutputArea(int maxLines) {
+        this.maxLines = maxLines;
+
+        setEditable(false);
+        setUndoManager(UndoUtils.noOpUndoManager());
+    }
+
+    public int getMaxLines() {
+        return maxLines;
+    }
+
+    /**
+     * Appends text, then removes the oldest lines exceeding the limit and scrolls to the end
+     */
+    public void appendOutput(String text) {
+        appendText(text);
+
+        // The last paragraph is the line still being written
+        int excessLines = getParagraphs().size() - 1 - maxLines;
+        if (excessLines > 0) {
+            deleteText(0, getAbsolutePosition(excessLines, 0));
+        }
+
+        moveTo(getLength());
+        requestFollowCaret();
+    }
+}
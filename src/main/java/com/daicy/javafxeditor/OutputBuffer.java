@@ -0,0 +1,182 @@
+package com.daicy.javafxeditor;
+
+/**
+ * Thread-safe, bounded buffer of output lines.
+ * <p>
+ * A producer appends text from any thread; a single consumer periodically takes the text
+ * appended since its previous call. Only the latest maxLines complete lines are retained:
+ * when the consumer falls behind, the oldest undelivered lines are dropped, and replaced
+ * by a marker telling how many lines were truncated.
+ * <p>
+ * Output without line breaks - progress bars, binary data, minified JSON - must not grow
+ * a single line without limit: a line reaching maxLineLength is split, its rest
+ * starting a new line. The log still receives the text unchanged.
+ */
+public class OutputBuffer {
+
+    /**
+     * Long enough for any line meant to be read, short enough for the output pane
+     */
+    public static final int DEFAULT_MAX_LINE_LENGTH = 10_000;
+
+    private final OutputLog log;
+    private final String[] lines;
+    private final int maxLineLength;
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Number of the oldest retained line, counting from the first line ever appended
+     */
+    private long firstLineNumber = 0;
+    private final StringBuilder openLine = new StringBuilder();
+
+    private long deliveredLine = 0;
+    private int deliveredChars = 0;
+    private long truncatedLines = 0;
+
+    /**
+     * @param maxLines the maximum number of complete lines retained
+     */
+    public OutputBuffer(int maxLines) {
+        this(maxLines, null);
+    }
+
+    /**
+     * @param maxLines the maximum number of complete lines retained
+     * @param log      receives all the appended text, including lines later dropped; null for none
+     */
+    public OutputBuffer(int maxLines, OutputLog log) {
+        this(maxLines, DEFAULT_MAX_LINE_LENGTH, log);
+    }
+
+    /**
+     * @param maxLines      the maximum number of complete lines retained
+     * @param maxLineLength the length at which lines are split
+     * @param log           receives all the appended text, including lines later dropped; null for none
+     */
+    public OutputBuffer(int maxLines, int maxLineLength, OutputLog log) {
+        this.log = log;
+
+        if (maxLines < 1) {
+            throw new IllegalArgumentException("At least 1 line must be retained");
+        }
+        if (maxLineLength < 1) {
+            throw new IllegalArgumentException("Lines must hold at least 1 character");
+        }
+
+        this.lines = new String[maxLines];
+        this.maxLineLength = maxLineLength;
+    }
+
+    public int getMaxLines() {
+        return lines.length;
+    }
+
+    public void append(CharSequence text) {
+        if (log != null) {
+            log.append(text);
+        }
+
+        appendLines(text);
+    }
+
+    private synchronized void appendLines(CharSequence text) {
+        int segmentStart = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                appendToOpenLine(text, segmentStart, i);
+                completeLine();
+                segmentStart = i + 1;
+            }
+        }
+
+        appendToOpenLine(text, segmentStart, text.length());
+    }
+
+    /**
+     * Appends a segment without line breaks, splitting the open line whenever it would exceed the maximum length
+     */
+    private void appendToOpenLine(CharSequence text, int start, int end) {
+        while (end - start > maxLineLength - openLine.length()) {
+            int splitPosition = start + maxLineLength - openLine.length();
+            openLine.append(text, start, splitPosition);
+            completeLine();
+            start = splitPosition;
+        }
+
+        openLine.append(text, start, end);
+    }
+
+    /**
+     * Terminates the line being written, if any, so that the next text starts on a new line
+     */
+    public synchronized void endLine() {
+        if (openLine.length() > 0) {
+            if (log != null) {
+                log.append("\n");
+            }
+            completeLine();
+        }
+    }
+
+    private void completeLine() {
+        if (size == lines.length) {
+            lines[head] = null;
+            head = (head + 1) % lines.length;
+            size--;
+            firstLineNumber++;
+        }
+
+        lines[(head + size) % lines.length] = openLine.toString();
+        size++;
+        openLine.setLength(0);
+    }
+
+    /**
+     * Takes the text appended since the previous call, including the latest incomplete line.
+     *
+     * @return the new text, preceded by a marker line if undelivered lines were dropped; empty if nothing is new
+     */
+    public synchronized String takeNewText() {
+        StringBuilder result = new StringBuilder();
+
+        if (deliveredLine < firstLineNumber) {
+            long droppedLines = firstLineNumber - deliveredLine;
+
+            // The beginning of the first dropped line was already delivered
+            if (deliveredChars > 0) {
+                result.append('\n');
+                droppedLines--;
+            }
+
+            if (droppedLines > 0) {
+                result.append("[... ").append(droppedLines).append(droppedLines == 1 ? " line" : " lines").append(" truncated ...]\n");
+                truncatedLines += droppedLines;
+            }
+
+            deliveredLine = firstLineNumber;
+            deliveredChars = 0;
+        }
+
+        for (long line = deliveredLine; line < firstLineNumber + size; line++) {
+            String text = lines[(int) ((head + line - firstLineNumber) % lines.length)];
+            result.append(text, deliveredChars, text.length()).append('\n');
+            deliveredChars = 0;
+        }
+
+        deliveredLine = firstLineNumber + size;
+        result.append(openLine, deliveredChars, openLine.length());
+        deliveredChars = openLine.length();
+
+        return result.toString();
+    }
+
+    /**
+     * @return the number of lines dropped before being delivered so far
+     */
+    public synchronized long getTruncatedLines() {
+        return truncatedLines;
+    }
+}
@@ -0,0 +1,148 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Complete record of the output of a run, written to a file while the output is produced.
+ * <p>
+ * Unlike the output pane, the log is never truncated: it is either a temporary spill file,
+ * deleted once no longer needed, or a file chosen by the user to tee the output into.
+ * Text is encoded into a buffer, written to the channel whenever the buffer is full.
+ */
+public class OutputLog implements AutoCloseable {
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final boolean temporary;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+    private IOException failure;
+    private boolean closed = false;
+
+    private OutputLog(Path path, boolean temporary, Charset charset) throws IOException {
+        this.path = path;
+        this.temporary = temporary;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Creates a log in a temporary file, deleted by delete()
+     */
+    public static OutputLog createTemporary(Charset charset) throws IOException {
+        Path path = Files.createTempFile("output", ".log");
+        path.toFile().deleteOnExit();
+        return new OutputLog(path, true, charset);
+    }
+
+    /**
+     * Creates - or truncates - the given file, to tee the output into
+     */
+    public static OutputLog create(Path path, Charset charset) throws IOException {
+        return new OutputLog(path, false, charset);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean isTemporary() {
+        return temporary;
+    }
+
+    /**
+     * Appends text; after a write failure, text is ignored and the failure is reported by getFailure()
+     */
+    public synchronized void append(CharSequence text) {
+        if (closed || failure != null) {
+            return;
+        }
+
+        try {
+            CharBuffer charBuffer = CharBuffer.wrap(text);
+            while (encoder.encode(charBuffer, byteBuffer, false).isOverflow()) {
+                drain();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * @return the first write failure, or null if the log is complete
+     */
+    public synchronized IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Copies the whole log, which must be closed, to the given file - channel to channel
+     */
+    public void copyTo(Path target) throws IOException {
+        try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+             FileChannel targetChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, size - position, targetChannel);
+            }
+            targetChannel.force(true);
+        }
+    }
+
+    /**
+     * Deletes the log file, if temporary
+     */
+    public void delete() throws IOException {
+        close();
+        if (temporary) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            if (failure == null) {
+                while (encoder.encode(CharBuffer.allocate(0), byteBuffer, true).isOverflow()) {
+                    drain();
+                }
+                while (encoder.flush(byteBuffer).isOverflow()) {
+                    drain();
+                }
+                drain();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        byteBuffer.flip();
+        while (byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+        byteBuffer.clear();
+    }
+}
@@ -0,0 +1,51 @@
+package com.daicy.javafxeditor;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the performance metrics of the output pane; recording never allocates, so metrics are always on.
+ */
+public final class OutputMetrics implements OutputMetricsMXBean {
+
+    private static final String OBJECT_NAME = "com.daicy.javafxeditor:type=Output";
+
+    private final RateMetric outputRate = new RateMetric();
+    private final TimerMetric outputDeliveries = new TimerMetric();
+
+    /**
+     * Exposes the metrics to JMX clients, such as JConsole
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param characterCount the number of characters appended to the pane
+     * @param nanos          the time spent appending them, on the FX thread
+     */
+    public void recordDelivery(int characterCount, long nanos) {
+        outputRate.record(characterCount);
+        outputDeliveries.record(nanos);
+    }
+
+    @Override
+    public double getOutputCharactersPerSecond() {
+        return outputRate.getRate();
+    }
+
+    @Override
+    public long getOutputCharacters() {
+        return outputRate.getTotal();
+    }
+
+    @Override
+    public TimerMetric.Statistics getOutputDeliveries() {
+        return outputDeliveries.getStatistics();
+    }
+}
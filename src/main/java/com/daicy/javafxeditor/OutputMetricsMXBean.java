@@ -0,0 +1,20 @@
+package com.daicy.javafxeditor;
+
+/**
+ * Performance metrics of the output pane, registered as com.daicy.javafxeditor:type=Output.
+ * Durations are in milliseconds.
+ */
+public interface OutputMetricsMXBean {
+
+    /**
+     * @return the characters output by programs, per second over the last seconds
+     */
+    double getOutputCharactersPerSecond();
+
+    long getOutputCharacters();
+
+    /**
+     * @return the time spent on the FX thread appending output to the pane
+     */
+    TimerMetric.Statistics getOutputDeliveries();
+}
@@ -1,38 +1,92 @@
 package com.daicy.javafxeditor;
 
 import java.time.Duration;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 
+/**
+ * Periodically delivers the new text of an OutputBuffer to the FX thread.
+ * <p>
+ * Only the text appended since the previous delivery is sent, and a new delivery
+ * waits for the previous one to be performed: when the FX thread is busy, output
+ * accumulates in the bounded buffer instead of flooding the event queue.
+ */
 public class OutputThread extends Thread {
 
     private final Duration refreshRate;
-    private final AtomicReference<StringBuilder> outputBuffer;
-    private final java.util.function.Consumer<String> outputAction;
+    private final OutputBuffer outputBuffer;
+    private final Consumer<String> outputAction;
+    private final OutputMetrics metrics;
+
+    private final AtomicBoolean deliveryPending = new AtomicBoolean(false);
+
+    /**
+     * @param refreshRate  the delay between two deliveries
+     * @param outputBuffer the buffer filled by the producers
+     * @param outputAction receives, on the FX thread, the text appended since the previous delivery
+     */
+    public OutputThread(Duration refreshRate, OutputBuffer outputBuffer, Consumer<String> outputAction) {
+        this(refreshRate, outputBuffer, outputAction, null);
+    }
+
+    /**
+     * @param metrics records the deliveries; null for none
+     */
+    public OutputThread(Duration refreshRate, OutputBuffer outputBuffer, Consumer<String> outputAction, OutputMetrics metrics) {
+        super("Output");
+        setDaemon(true);
 
-    public OutputThread(Duration refreshRate, AtomicReference<StringBuilder> outputBuffer, java.util.function.Consumer<String> outputAction) {
         this.refreshRate = refreshRate;
         this.outputBuffer = outputBuffer;
         this.outputAction = outputAction;
+        this.metrics = metrics;
     }
 
     @Override
     public void run() {
         while (!Thread.currentThread().isInterrupted()) {
-            tryToOutput();
+            tryToOutput(false);
             try {
                 Thread.sleep(refreshRate.toMillis());
             } catch (InterruptedException e) {
-                tryToOutput();
-                return;
+                break;
             }
         }
+
+        // Whether interrupted while sleeping or while delivering, the latest text is still delivered
+        tryToOutput(true);
     }
 
-    private void tryToOutput() {
-        String textToOutput = outputBuffer.get().toString();
+    /**
+     * @param finalOutput true to deliver even if the previous delivery is pending, as no other will follow
+     */
+    private void tryToOutput(boolean finalOutput) {
+        if (!finalOutput && deliveryPending.get()) {
+            return;
+        }
+
+        String textToOutput = outputBuffer.takeNewText();
         if (!textToOutput.isEmpty()) {
-            Platform.runLater(() -> outputAction.accept(textToOutput));
+            deliveryPending.set(true);
+            Platform.runLater(() -> {
+                PerformanceEvents.OutputFlush event = new PerformanceEvents.OutputFlush();
+                event.begin();
+                long startNanos = System.nanoTime();
+                try {
+                    outputAction.accept(textToOutput);
+                } finally {
+                    if (metrics != null) {
+                        metrics.recordDelivery(textToOutput.length(), System.nanoTime() - startNanos);
+                    }
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.characters = textToOutput.length();
+                        event.commit();
+                    }
+                    deliveryPending.set(false);
+                }
+            });
         }
     }
 }
@@ -0,0 +1,115 @@
+package com.daicy.javafxeditor;
+
+import java.util.Arrays;
+
+/**
+ * Stores the lexer state at the start of each paragraph, that is, whether a token
+ * coming from the previous paragraphs is still open there - and of which rule.
+ * <p>
+ * Lexing can restart from any paragraph whose state is {@link #CLEAN}; conversely,
+ * when re-lexing reaches a paragraph in the same clean state, the following
+ * unchanged paragraphs need no restyling.
+ * <p>
+ * Like {@link DirtyParagraphs}, indexes always refer to the current document.
+ */
+class ParagraphStates {
+
+    /**
+     * The paragraph has not been lexed since it was edited
+     */
+    public static final short UNKNOWN = -1;
+
+    /**
+     * No token is open at the start of the paragraph
+     */
+    public static final short CLEAN = 0;
+
+    private short[] states = new short[16];
+    private int size;
+
+    ParagraphStates() {
+        reset(1);
+    }
+
+    /**
+     * @param rule the index of a lexer rule
+     * @return the state of a paragraph starting inside a token of such rule
+     */
+    public static short insideToken(int rule) {
+        return (short) (rule + 1);
+    }
+
+    /**
+     * Forgets every state, as when the lexer rules change
+     *
+     * @param paragraphCount the number of paragraphs in the document
+     */
+    public void reset(int paragraphCount) {
+        ensureCapacity(paragraphCount);
+        Arrays.fill(states, 0, paragraphCount, UNKNOWN);
+        states[0] = CLEAN;
+        size = paragraphCount;
+    }
+
+    /**
+     * Records an edit: the states of the paragraphs following the edited one are shifted,
+     * while the states of the inserted paragraphs are unknown.
+     *
+     * @param paragraph     the paragraph where the edit starts
+     * @param removedLines  the number of line breaks removed by the edit
+     * @param insertedLines the number of line breaks inserted by the edit
+     */
+    public void edit(int paragraph, int removedLines, int insertedLines) {
+        int tailStart = paragraph + 1 + removedLines;
+        int tailLength = size - tailStart;
+        int newSize = size + insertedLines - removedLines;
+
+        ensureCapacity(newSize);
+        System.arraycopy(states, tailStart, states, paragraph + 1 + insertedLines, tailLength);
+        Arrays.fill(states, paragraph + 1, paragraph + 1 + insertedLines, UNKNOWN);
+        size = newSize;
+    }
+
+    public short get(int paragraph) {
+        return states[paragraph];
+    }
+
+    /**
+     * @param paragraph   the first paragraph to update
+     * @param newStates   the states of the consecutive paragraphs starting there
+     * @param stateCount  how many of the given states to store
+     */
+    public void set(int paragraph, short[] newStates, int stateCount) {
+        System.arraycopy(newStates, 0, states, paragraph, stateCount);
+    }
+
+    /**
+     * @return the nearest paragraph, not after the given one, where lexing can restart
+     */
+    public int findRestartParagraph(int paragraph) {
+        while (paragraph > 0 && states[paragraph] != CLEAN) {
+            paragraph--;
+        }
+        return paragraph;
+    }
+
+    /**
+     * Copies the states of a range of paragraphs, so that they can be read by a background pass
+     *
+     * @param from the first paragraph to copy
+     * @param to   the paragraph after the last one to copy; the range is clipped to the document
+     */
+    public short[] copy(int from, int to) {
+        return Arrays.copyOfRange(states, from, Math.max(from, Math.min(to, size)));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > states.length) {
+            states = Arrays.copyOf(states, Math.max(capacity, states.length * 2));
+        }
+    }
+}
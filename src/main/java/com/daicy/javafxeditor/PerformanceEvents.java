@@ -0,0 +1,98 @@
+package com.daicy.javafxeditor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The Flight Recorder events of the editor, shown in JDK Mission Control under the "JavaFxEditor" category.
+ * <p>
+ * Events are only committed while a recording enables them: otherwise begin(), end() and
+ * shouldCommit() cost next to nothing, so they are emitted unconditionally.
+ */
+public final class PerformanceEvents {
+
+    private static final String CATEGORY = "JavaFxEditor";
+
+    private PerformanceEvents() {
+    }
+
+    @Name("com.daicy.javafxeditor.HighlightPass")
+    @Label("Highlight Pass")
+    @Description("Lexing of dirty paragraphs in the background")
+    @Category({CATEGORY, "Editor"})
+    public static final class HighlightPass extends Event {
+
+        @Label("First Paragraph")
+        int firstParagraph;
+
+        @Label("End Paragraph")
+        @Description("The paragraph where the pass stopped, excluded")
+        int endParagraph;
+
+        @Label("Provisional")
+        @Description("Whether only the visible paragraphs were styled, ahead of the dirty range")
+        boolean provisional;
+
+        @Label("From Cache")
+        boolean fromCache;
+    }
+
+    @Name("com.daicy.javafxeditor.StyleApplication")
+    @Label("Style Application")
+    @Description("Styles of a highlight pass applied to the editor, on the FX thread")
+    @Category({CATEGORY, "Editor"})
+    public static final class StyleApplication extends Event {
+
+        @Label("Start Paragraph")
+        int startParagraph;
+
+        @Label("End Paragraph")
+        int endParagraph;
+
+        @Label("Patches")
+        @Description("The ranges whose styles actually changed")
+        int patches;
+    }
+
+    @Name("com.daicy.javafxeditor.FileOpen")
+    @Label("File Open")
+    @Description("Loading of a document into the editor, until it is editable")
+    @Category({CATEGORY, "Files"})
+    public static final class FileOpen extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.daicy.javafxeditor.FileSave")
+    @Label("File Save")
+    @Description("Writing of a document snapshot, in the background")
+    @Category({CATEGORY, "Files"})
+    public static final class FileSave extends Event {
+
+        @Label("Path")
+        String path;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.daicy.javafxeditor.OutputFlush")
+    @Label("Output Flush")
+    @Description("Output of the running program appended to the output pane, on the FX thread")
+    @Category({CATEGORY, "Output"})
+    public static final class OutputFlush extends Event {
+
+        @Label("Characters")
+        int characters;
+    }
+}
@@ -0,0 +1,91 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Records the application with the JDK Flight Recorder, from the editor: users do not need
+ * to restart it with JVM options to report a performance problem.
+ * <p>
+ * The recording uses the "profile" settings of the JDK - method samples, allocations, GC, locks -
+ * and includes the events of PerformanceEvents. It is kept in the repository of the recorder
+ * until it is stopped and written to a .jfr file.
+ */
+public final class PerformanceRecorder {
+
+    private static final String SETTINGS = "profile";
+
+    private Recording recording;
+
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * @throws IOException    if the settings of the JDK cannot be read
+     * @throws ParseException if the settings of the JDK are invalid
+     */
+    public void start() throws IOException, ParseException {
+        if (recording != null) {
+            throw new IllegalStateException("A recording is in progress");
+        }
+
+        Recording newRecording = new Recording(Configuration.getConfiguration(SETTINGS));
+        newRecording.setName("JavaFxEditor");
+        newRecording.setToDisk(true);
+        newRecording.enable(PerformanceEvents.HighlightPass.class);
+        newRecording.enable(PerformanceEvents.StyleApplication.class);
+        newRecording.enable(PerformanceEvents.FileOpen.class);
+        newRecording.enable(PerformanceEvents.FileSave.class);
+        newRecording.enable(PerformanceEvents.OutputFlush.class);
+        newRecording.start();
+
+        recording = newRecording;
+    }
+
+    /**
+     * Stops recording; the recording is then written by the returned writer, which may run in the background
+     */
+    public RecordingWriter stop() {
+        if (recording == null) {
+            throw new IllegalStateException("No recording is in progress");
+        }
+
+        Recording stoppedRecording = recording;
+        recording = null;
+        stoppedRecording.stop();
+
+        return target -> {
+            try {
+                stoppedRecording.dump(target);
+            } finally {
+                stoppedRecording.close();
+            }
+        };
+    }
+
+    /**
+     * Discards the recording in progress, if any
+     */
+    public void discard() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordingWriter {
+
+        /**
+         * Writes the recording, then releases it
+         *
+         * @param target the .jfr file to create or replace
+         */
+        void write(Path target) throws IOException;
+    }
+}
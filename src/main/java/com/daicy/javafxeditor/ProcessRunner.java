@@ -0,0 +1,147 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a program as a child process, streaming its output into an OutputBuffer.
+ * <p>
+ * Standard error is merged into standard output, which is read through a channel in large blocks
+ * by a dedicated daemon thread - so a program printing a huge number of lines only costs one buffer
+ * append per block, and never blocks on a full pipe. Standard input is closed at once.
+ */
+public class ProcessRunner {
+
+    /**
+     * Time given to the processes to terminate when stopped, before they are killed
+     */
+    private static final Duration STOP_GRACE_PERIOD = Duration.ofSeconds(2);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Process process;
+    private final OutputBuffer outputBuffer;
+    private final Charset charset;
+    private final CompletableFuture<Integer> exitCode = new CompletableFuture<>();
+
+    private volatile boolean stopRequested = false;
+
+    private ProcessRunner(Process process, OutputBuffer outputBuffer, Charset charset) {
+        this.process = process;
+        this.outputBuffer = outputBuffer;
+        this.charset = charset;
+    }
+
+    /**
+     * @param command          the program and its arguments
+     * @param workingDirectory the working directory of the process
+     * @param outputBuffer     receives the output of the process
+     * @return the runner of the started process
+     * @throws IOException if the process cannot be started
+     */
+    public static ProcessRunner start(List<String> command, File workingDirectory, OutputBuffer outputBuffer) throws IOException {
+        Process process = new ProcessBuilder(command)
+                .directory(workingDirectory)
+                .redirectErrorStream(true)
+                .start();
+
+        process.getOutputStream().close();
+
+        ProcessRunner runner = new ProcessRunner(process, outputBuffer, Charset.defaultCharset());
+
+        Thread pumpThread = new Thread(runner::pumpOutput, "ProcessRunner output");
+        pumpThread.setDaemon(true);
+        pumpThread.start();
+
+        return runner;
+    }
+
+    /**
+     * @return the exit code, once the process has terminated and its whole output was read
+     */
+    public CompletableFuture<Integer> exitCodeFuture() {
+        return exitCode;
+    }
+
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Asks the process, and all its descendants, to terminate; those still alive
+     * after a grace period are killed.
+     */
+    public void stop() {
+        stopRequested = true;
+
+        // Collected before terminating the process, which would detach its descendants
+        List<ProcessHandle> processTree = Stream.concat(
+                Stream.of(process.toHandle()),
+                process.toHandle().descendants()
+        ).collect(Collectors.toList());
+
+        processTree.forEach(ProcessHandle::destroy);
+
+        CompletableFuture.delayedExecutor(STOP_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS).execute(() ->
+                processTree.stream()
+                        .filter(ProcessHandle::isAlive)
+                        .forEach(ProcessHandle::destroyForcibly)
+        );
+    }
+
+    private void pumpOutput() {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        try (ReadableByteChannel channel = Channels.newChannel(process.getInputStream())) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            CharBuffer charBuffer = CharBuffer.allocate(READ_BUFFER_SIZE);
+
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                endOfInput = channel.read(byteBuffer) < 0;
+
+                byteBuffer.flip();
+                while (decoder.decode(byteBuffer, charBuffer, endOfInput).isOverflow()) {
+                    flush(charBuffer);
+                }
+                byteBuffer.compact();
+                flush(charBuffer);
+            }
+
+            while (decoder.flush(charBuffer).isOverflow()) {
+                flush(charBuffer);
+            }
+            flush(charBuffer);
+
+            exitCode.complete(process.waitFor());
+        } catch (IOException | RuntimeException e) {
+            exitCode.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode.completeExceptionally(e);
+        }
+    }
+
+    private void flush(CharBuffer charBuffer) {
+        charBuffer.flip();
+        if (charBuffer.hasRemaining()) {
+            outputBuffer.append(charBuffer);
+        }
+        charBuffer.clear();
+    }
+}
@@ -0,0 +1,84 @@
+package com.daicy.javafxeditor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Amount of something per second - events, characters - averaged over the last seconds.
+ * <p>
+ * Amounts are summed into one slot per second of a small ring, reused once its second is
+ * out of the window; recording neither allocates nor locks. An amount recorded while its slot
+ * is being reused by another thread may be lost, which is acceptable for a rate.
+ */
+public final class RateMetric {
+
+    /**
+     * Complete seconds averaged by getRate()
+     */
+    private static final int WINDOW_SECONDS = 10;
+
+    /**
+     * One more slot than the window, for the second in progress
+     */
+    private static final int SLOT_COUNT = WINDOW_SECONDS + 1;
+
+    private final AtomicLongArray amounts = new AtomicLongArray(SLOT_COUNT);
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(SLOT_COUNT);
+    private final AtomicLong total = new AtomicLong();
+
+    public RateMetric() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slotSeconds.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public void record(long amount) {
+        record(amount, System.nanoTime());
+    }
+
+    void record(long amount, long nanoTime) {
+        long second = toSecond(nanoTime);
+        int slot = (int) Math.floorMod(second, (long) SLOT_COUNT);
+
+        long slotSecond = slotSeconds.get(slot);
+        if (slotSecond != second && slotSeconds.compareAndSet(slot, slotSecond, second)) {
+            amounts.set(slot, 0);
+        }
+
+        amounts.addAndGet(slot, amount);
+        total.addAndGet(amount);
+    }
+
+    /**
+     * @return the amount recorded since creation
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return the average amount per second over the last complete seconds
+     */
+    public double getRate() {
+        return getRate(System.nanoTime());
+    }
+
+    double getRate(long nanoTime) {
+        long currentSecond = toSecond(nanoTime);
+        long sum = 0;
+
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            long slotSecond = slotSeconds.get(i);
+            if (slotSecond < currentSecond && slotSecond >= currentSecond - WINDOW_SECONDS) {
+                sum += amounts.get(i);
+            }
+        }
+
+        return (double) sum / WINDOW_SECONDS;
+    }
+
+    private static long toSecond(long nanoTime) {
+        return Math.floorDiv(nanoTime, TimeUnit.SECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,68 @@
+package com.daicy.javafxeditor;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The latest events of the editor - actions, documents loaded, typing - kept in a small ring,
+ * so that a diagnostics report can tell what the user was doing.
+ * <p>
+ * Consecutive identical events are collapsed into one, counted: a burst of typing takes a single entry.
+ */
+public final class RecentEvents {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private final String[] messages;
+    private final long[] times;
+    private final int[] repeats;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * @param capacity the number of events kept; older ones are discarded
+     */
+    public RecentEvents(int capacity) {
+        messages = new String[capacity];
+        times = new long[capacity];
+        repeats = new int[capacity];
+    }
+
+    public void add(String message) {
+        add(message, System.currentTimeMillis());
+    }
+
+    synchronized void add(String message, long time) {
+        int latest = Math.floorMod(next - 1, messages.length);
+        if (size > 0 && messages[latest].equals(message)) {
+            times[latest] = time;
+            repeats[latest]++;
+            return;
+        }
+
+        messages[next] = message;
+        times[next] = time;
+        repeats[next] = 1;
+        next = (next + 1) % messages.length;
+        size = Math.min(size + 1, messages.length);
+    }
+
+    /**
+     * @return the events, oldest first, each with the time of its latest occurrence
+     */
+    public synchronized List<String> format() {
+        List<String> lines = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            int index = Math.floorMod(next - size + i, messages.length);
+            String time = LocalTime.ofInstant(Instant.ofEpochMilli(times[index]), ZoneId.systemDefault()).format(TIME_FORMATTER);
+            lines.add(time + " " + messages[index] + (repeats[index] > 1 ? " (x" + repeats[index] + ")" : ""));
+        }
+
+        return lines;
+    }
+}
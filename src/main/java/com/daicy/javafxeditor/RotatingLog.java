@@ -0,0 +1,69 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Text log bounded in size: once the file would exceed its maximum size, it is renamed
+ * with the suffix ".1" - the previous ".1" becoming ".2", and so on - and a new file is started.
+ * The oldest file beyond the maximum count is deleted.
+ */
+public final class RotatingLog {
+
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFileCount;
+
+    /**
+     * @param file         the current file; its directory is created once needed
+     * @param maxFileSize  the size in bytes beyond which the file is rotated
+     * @param maxFileCount the number of files kept, including the current one
+     */
+    public RotatingLog(Path file, long maxFileSize, int maxFileCount) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFileCount = maxFileCount;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Appends an entry, rotating the files first if needed: an entry is never split across files
+     */
+    public synchronized void append(String entry) throws IOException {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        if (Files.exists(file) && Files.size(file) > 0 && Files.size(file) + bytes.length > maxFileSize) {
+            rotate();
+        }
+
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void rotate() throws IOException {
+        Files.deleteIfExists(getRotatedFile(maxFileCount - 1));
+        for (int i = maxFileCount - 2; i >= 1; i--) {
+            Path rotatedFile = getRotatedFile(i);
+            if (Files.exists(rotatedFile)) {
+                Files.move(rotatedFile, getRotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        if (maxFileCount > 1) {
+            Files.move(file, getRotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+    }
+
+    Path getRotatedFile(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
@@ -0,0 +1,138 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The documents open when the editor was closed, so that they are shown again on the next launch.
+ * <p>
+ * Only documents having a file are kept - with their caret and scroll positions, and the size and
+ * modification time of the file; unmodified documents also keep their styles, restored as long as
+ * the file is unchanged. The session is a single compact binary file, replaced atomically.
+ */
+public final class Session {
+
+    private static final int MAGIC = 0x4A465353;
+    private static final byte VERSION = 1;
+
+    private final List<DocumentDescriptor> documents;
+    private final int selectedIndex;
+
+    /**
+     * @param documents     the open documents, in tab order: untitled ones are skipped
+     * @param selectedIndex the index of the selected document, or -1
+     */
+    public Session(List<DocumentDescriptor> documents, int selectedIndex) {
+        List<DocumentDescriptor> savedDocuments = new ArrayList<>();
+        int savedSelectedIndex = -1;
+
+        for (int i = 0; i < documents.size(); i++) {
+            if (documents.get(i).getFileOptional().isPresent()) {
+                if (i == selectedIndex) {
+                    savedSelectedIndex = savedDocuments.size();
+                }
+                savedDocuments.add(documents.get(i));
+            }
+        }
+
+        this.documents = Collections.unmodifiableList(savedDocuments);
+        this.selectedIndex = savedSelectedIndex;
+    }
+
+    /**
+     * @return the documents, in tab order; their unsaved text, if any, is not part of the session
+     */
+    public List<DocumentDescriptor> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the index of the selected document, or -1
+     */
+    public int getSelectedIndex() {
+        return selectedIndex;
+    }
+
+    public void save(Path sessionFile) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BinaryEncoding.writeInt(output, MAGIC);
+        output.write(VERSION);
+        BinaryEncoding.writeVarint(output, selectedIndex + 1);
+        BinaryEncoding.writeVarint(output, documents.size());
+
+        for (DocumentDescriptor document : documents) {
+            BinaryEncoding.writeString(output, document.getFileOptional().get().getAbsolutePath());
+            BinaryEncoding.writeVarint(output, document.getCaretPosition());
+            BinaryEncoding.writeVarint(output, document.getTopParagraph());
+            BinaryEncoding.writeLong(output, document.getFileSize());
+            BinaryEncoding.writeLong(output, document.getFileModified());
+
+            // The styles of a modified document do not match its file
+            Optional<HighlightSnapshot> highlighting = document.isModified() ? Optional.empty() : document.getHighlightingOptional();
+            output.write(highlighting.isPresent() ? 1 : 0);
+            highlighting.ifPresent(snapshot -> snapshot.write(output));
+        }
+
+        Path absoluteFile = sessionFile.toAbsolutePath();
+        Files.createDirectories(absoluteFile.getParent());
+        Path temporaryFile = Files.createTempFile(absoluteFile.getParent(), "." + absoluteFile.getFileName(), ".tmp");
+        try {
+            Files.write(temporaryFile, output.toByteArray());
+            try {
+                Files.move(temporaryFile, absoluteFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * @return the saved session, or an empty Optional if there is none
+     * @throws IOException if the session cannot be read
+     */
+    public static Optional<Session> load(Path sessionFile) throws IOException {
+        if (!Files.exists(sessionFile)) {
+            return Optional.empty();
+        }
+
+        ByteBuffer input = ByteBuffer.wrap(Files.readAllBytes(sessionFile));
+
+        try {
+            if (input.getInt() != MAGIC || input.get() != VERSION) {
+                throw new IOException("Unsupported session: " + sessionFile);
+            }
+
+            int selectedIndex = BinaryEncoding.readVarintAsInt(input) - 1;
+            int documentCount = BinaryEncoding.readVarintAsInt(input);
+
+            List<DocumentDescriptor> documents = new ArrayList<>();
+            for (int i = 0; i < documentCount; i++) {
+                File file = new File(BinaryEncoding.readString(input));
+                int caretPosition = BinaryEncoding.readVarintAsInt(input);
+                int topParagraph = BinaryEncoding.readVarintAsInt(input);
+                long fileSize = input.getLong();
+                long fileModified = input.getLong();
+                HighlightSnapshot highlighting = input.get() != 0 ? HighlightSnapshot.read(input) : null;
+
+                documents.add(new DocumentDescriptor(file, caretPosition, topParagraph, null, fileSize, fileModified, highlighting));
+            }
+
+            return Optional.of(new Session(documents, selectedIndex));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated session: " + sessionFile, e);
+        }
+    }
+}
@@ -1,12 +1,47 @@
 package com.daicy.javafxeditor;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
 public class Style {
     private final String cssClass;
     private final String pattern;
+    private final List<String> tokens;
 
     public Style(String cssClass, String pattern) {
+        this(cssClass, pattern, Collections.emptyList());
+    }
+
+    private Style(String cssClass, String pattern, List<String> tokens) {
         this.cssClass = cssClass;
         this.pattern = pattern;
+        this.tokens = tokens;
+    }
+
+    /**
+     * The style of tokens matched as whole words; its pattern is the alternation of the tokens,
+     * which the lexer replaces with a lookup when all of them are words
+     */
+    public static Style ofTokens(String cssClass, String... tokens) {
+        return new Style(cssClass, createTokensPattern(tokens), Collections.unmodifiableList(Arrays.asList(tokens.clone())));
+    }
+
+    /**
+     * @return the pattern matching any of the tokens, as a whole word
+     */
+    private static String createTokensPattern(String... tokens) {
+        StringBuilder tokensPattern = new StringBuilder();
+
+        for (int i = 0; i < tokens.length; i++) {
+            tokensPattern.append("\\b").append(Pattern.quote(tokens[i])).append("\\b");
+            if (i < tokens.length - 1) {
+                tokensPattern.append("|");
+            }
+        }
+
+        return tokensPattern.toString();
     }
 
     public String getCssClass() {
@@ -17,6 +52,13 @@ public class Style {
         return pattern;
     }
 
+    /**
+     * @return the tokens of a style created by ofTokens(), or an empty list
+     */
+    public List<String> getTokens() {
+        return tokens;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
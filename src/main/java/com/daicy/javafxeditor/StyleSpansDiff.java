@@ -0,0 +1,118 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+
+/**
+ * Compares the styles already applied to a range of text with the new ones,
+ * so that only the ranges actually changing are restyled.
+ */
+final class StyleSpansDiff {
+
+    private StyleSpansDiff() {
+    }
+
+    /**
+     * Computes the changes turning the old styles into the new ones.
+     * <p>
+     * Changed ranges separated by fewer than mergeDistance unchanged characters
+     * are merged into one patch, as restyling a few more characters is cheaper
+     * than updating the same paragraph twice.
+     *
+     * @param oldSpans      the styles currently applied to the range
+     * @param newSpans      the new styles of the range
+     * @param mergeDistance the minimum number of unchanged characters separating two patches
+     * @return the patches, in text order; empty if nothing changed
+     */
+    public static <S> List<Patch<S>> diff(StyleSpans<S> oldSpans, StyleSpans<S> newSpans, int mergeDistance) {
+        List<int[]> changedRanges = new ArrayList<>();
+
+        Iterator<StyleSpan<S>> oldIterator = oldSpans.iterator();
+        Iterator<StyleSpan<S>> newIterator = newSpans.iterator();
+
+        S oldStyle = null;
+        int oldLength = 0;
+        S newStyle = null;
+        int newLength = 0;
+        int position = 0;
+
+        while (true) {
+            while (oldLength == 0 && oldIterator.hasNext()) {
+                StyleSpan<S> span = oldIterator.next();
+                oldStyle = span.getStyle();
+                oldLength = span.getLength();
+            }
+            while (newLength == 0 && newIterator.hasNext()) {
+                StyleSpan<S> span = newIterator.next();
+                newStyle = span.getStyle();
+                newLength = span.getLength();
+            }
+
+            if (newLength == 0) {
+                break;
+            }
+
+            // Text lacking old styles can only be new
+            int commonLength = oldLength == 0 ? newLength : Math.min(oldLength, newLength);
+            if (oldLength == 0 || !Objects.equals(oldStyle, newStyle)) {
+                addChangedRange(changedRanges, position, position + commonLength, mergeDistance);
+            }
+
+            position += commonLength;
+            oldLength = Math.max(0, oldLength - commonLength);
+            newLength -= commonLength;
+        }
+
+        if (changedRanges.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Patch<S>> patches = new ArrayList<>(changedRanges.size());
+        for (int[] range : changedRanges) {
+            patches.add(new Patch<>(range[0], newSpans.subView(range[0], range[1])));
+        }
+        return patches;
+    }
+
+    private static void addChangedRange(List<int[]> changedRanges, int start, int end, int mergeDistance) {
+        if (!changedRanges.isEmpty()) {
+            int[] latestRange = changedRanges.get(changedRanges.size() - 1);
+            if (start - latestRange[1] < mergeDistance) {
+                latestRange[1] = end;
+                return;
+            }
+        }
+
+        changedRanges.add(new int[]{start, end});
+    }
+
+    /**
+     * Styles to apply from a given offset
+     */
+    public static final class Patch<S> {
+        private final int offset;
+        private final StyleSpans<S> styleSpans;
+
+        Patch(int offset, StyleSpans<S> styleSpans) {
+            this.offset = offset;
+            this.styleSpans = styleSpans;
+        }
+
+        /**
+         * @return the offset of the patch, relative to the compared range
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        public StyleSpans<S> getStyleSpans() {
+            return styleSpans;
+        }
+    }
+}
@@ -1,41 +1,182 @@
 package com.daicy.javafxeditor;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.scene.control.IndexRange;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
+import org.fxmisc.richtext.Selection;
+import org.fxmisc.richtext.SelectionImpl;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.RichTextChange;
+import org.fxmisc.richtext.model.StyleSpan;
 import org.fxmisc.richtext.model.StyleSpans;
 import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.reactfx.EventSource;
+import org.reactfx.EventStream;
+import org.reactfx.EventStreams;
+import org.reactfx.Subscription;
 
 
 public class StyledCodeEditor extends CodeArea {
 
     private static final Pattern LEADING_SPACE_PATTERN = Pattern.compile("^\\s*");
 
-    private Pattern syntaxPattern = Pattern.compile("");
-    private Map<String, Style> styles = new HashMap<>();
-    private int descriptorKeyCounter = 0;
+    /**
+     * Maximum number of paragraphs restyled by a single background pass:
+     * larger documents are styled in chunks, so that the visible paragraphs
+     * do not wait for the whole document.
+     */
+    private static final int STYLING_CHUNK_PARAGRAPHS = 1000;
+
+    /**
+     * Number of chunks lexed at the same time when a large range is dirty
+     */
+    private static final int PARALLEL_STYLING_CHUNKS = Runtime.getRuntime().availableProcessors();
+
+    private static final ForkJoinPool PARALLEL_STYLING_POOL = new ForkJoinPool(PARALLEL_STYLING_CHUNKS);
+
+    /**
+     * Changed style ranges closer than this number of characters are applied together
+     */
+    private static final int STYLE_PATCH_MERGE_DISTANCE = 80;
+
+    /**
+     * Maximum number of hits reported to the FX thread at once
+     */
+    private static final int SEARCH_BATCH_SIZE = 4096;
+
+    /**
+     * Maximum number of hits highlighted in the viewport: each highlight is a layer of every visible paragraph
+     */
+    private static final int MAX_HIGHLIGHTED_HITS = 100;
+
+    private static final Duration SEARCH_DELAY = Duration.ofMillis(300);
+
+    /**
+     * Documents shorter than this number of characters are lexed faster than their styles are looked up
+     */
+    private static final int HIGHLIGHT_CACHE_MIN_LENGTH = 64 * 1024;
+
+    private static final ExecutorService STYLING_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "StyledCodeEditor styling");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<Style> styles = new ArrayList<>();
+    private SyntaxLexer syntaxLexer = new SyntaxLexer(styles);
 
     private String tabReplacementString = null;
 
-    public StyledCodeEditor(Duration stylingSleepDuration) {
+    private final DirtyParagraphs dirtyParagraphs = new DirtyParagraphs();
+    private final ParagraphStates paragraphStates = new ParagraphStates();
+    private int unterminatedParagraph = -1;
+    private long stylingRevision = 0;
+    private boolean applyingHighlighting = false;
+    private boolean stylingPaused = false;
+
+    private HighlightCache highlightCache = null;
+    /**
+     * The revision whose styling started by looking up the cache; -1 if none
+     */
+    private long cacheLookupRevision = -1;
+
+    private EditorMetrics metrics = null;
+    /**
+     * The time of the earliest edit whose paragraphs are not styled yet, if styleLagPending
+     */
+    private long styleLagStartNanos = 0;
+    private boolean styleLagPending = false;
+
+    private int provisionalFirstParagraph = -1;
+    private int provisionalLastParagraph = -1;
+    private long provisionalRevision = -1;
+
+    private final EventSource<Long> stylingRequests = new EventSource<>();
+    private final EventSource<Double> scrollRequests = new EventSource<>();
+    private final EventSource<Long> continuationRequests = new EventSource<>();
+    private final Subscription stylingSubscription;
+
+    private Pattern searchPattern = null;
+    private boolean searchRegex = false;
+    private volatile long searchGeneration = 0;
+    private long searchHitsGeneration = -1;
+    /**
+     * Start and end offsets of the hits, in document order; only the first searchHitsLength values are used
+     */
+    private int[] searchHits = new int[0];
+    private int searchHitsLength = 0;
+    private final ReadOnlyIntegerWrapper searchHitCount = new ReadOnlyIntegerWrapper(0);
+    private final ReadOnlyBooleanWrapper searching = new ReadOnlyBooleanWrapper(false);
+    private final List<Selection<Collection<String>, String, Collection<String>>> hitHighlights = new ArrayList<>();
+
+    /**
+     * Creates the editor; styling is performed in the background once edits
+     * have paused for the given delay, so that a burst of typing results in a single pass.
+     *
+     * @param stylingDelay the quiet period after the latest edit before styling
+     */
+    public StyledCodeEditor(Duration stylingDelay) {
         setParagraphGraphicFactory(LineNumberFactory.get(this));
 
-        new StyleDaemon(this, stylingSleepDuration).start();
+        // Unlike plainTextChanges(), these include replacements with identical text, which reset styles
+        richChanges().filter(change -> !applyingHighlighting).subscribe(this::trackDirtyParagraphs);
+        estimatedScrollYProperty().addListener((observable, oldValue, newValue) -> {
+            scrollRequests.push(newValue);
+            updateSearchHighlights();
+        });
+
+        // Hits follow the edited text only once searched again: meanwhile, the highlights shift along with the text
+        plainTextChanges()
+                .successionEnds(SEARCH_DELAY)
+                .filter(change -> searchPattern != null)
+                .subscribe(change -> startSearch());
+
+        EventStream<?> quietRequests = EventStreams.merge(stylingRequests, scrollRequests).successionEnds(stylingDelay);
+
+        stylingSubscription = EventStreams.merge(quietRequests, continuationRequests)
+                .filter(request -> !stylingPaused && !dirtyParagraphs.isEmpty())
+                .supplyTask(this::highlightAsync)
+                .awaitLatest(stylingRequests)
+                .filterMap(result -> {
+                    if (result.isSuccess()) {
+                        return Optional.of(result.get());
+                    } else {
+                        result.getFailure().printStackTrace();
+                        return Optional.empty();
+                    }
+                })
+                .subscribe(this::applyHighlighting);
     }
 
     public StyledCodeEditor() {
@@ -52,49 +193,80 @@ public class StyledCodeEditor extends CodeArea {
      * @param regexPattern a regular expression pattern used to match text in the editor
      */
     public void addPattern(String cssClass, String regexPattern) {
-        String key = "S" + descriptorKeyCounter;
-        descriptorKeyCounter++;
-
-        Style style = new Style(cssClass, regexPattern);
-        styles.put(key, style);
-
-        updateSyntaxPattern();
+        addStyle(new Style(cssClass, regexPattern));
     }
 
     /**
-     * Simplified version of addPattern(), focusing on <em>tokens</em> (for example, keywords)
+     * Simplified version of addPattern(), focusing on <em>tokens</em> (for example, keywords).
+     * <p>
+     * When all the tokens are words, the lexer looks up each word of the text in a set
+     * instead of attempting every token: this scales to hundreds of keywords and builtins.
      *
      * @param cssClass the CSS class used to style the tokens
      * @param tokens   the tokens to style
      */
     public void addTokens(String cssClass, String... tokens) {
-        StringBuilder tokensPattern = new StringBuilder();
+        addStyle(Style.ofTokens(cssClass, tokens));
+    }
 
-        for (int i = 0; i < tokens.length; i++) {
-            tokensPattern.append("\\b").append(Pattern.quote(tokens[i])).append("\\b");
-            if (i < tokens.length - 1) {
-                tokensPattern.append("|");
-            }
-        }
+    private void addStyle(Style style) {
+        List<Style> newStyles = new ArrayList<>(styles);
+        newStyles.add(style);
+
+        // Compiling first, so that an invalid pattern leaves the editor unchanged
+        syntaxLexer = new SyntaxLexer(newStyles);
+        styles.add(style);
+
+        restyleAll();
+    }
+
+    /**
+     * @return the lexer compiled from the current patterns
+     */
+    SyntaxLexer getSyntaxLexer() {
+        return syntaxLexer;
+    }
 
-        addPattern(cssClass, tokensPattern.toString());
+    private void restyleAll() {
+        dirtyParagraphs.markAll(getParagraphs().size());
+        paragraphStates.reset(getParagraphs().size());
+        unterminatedParagraph = -1;
+        stylingRevision++;
+        stylingRequests.push(stylingRevision);
     }
 
-    private void updateSyntaxPattern() {
-        StringBuilder patternStringBuilder = new StringBuilder();
+    /**
+     * Only the paragraphs touched by an edit need restyling: the styling pass
+     * will later expand the range as needed, according to the paragraph states.
+     */
+    private void trackDirtyParagraphs(RichTextChange<Collection<String>, String, Collection<String>> change) {
+        int paragraph = offsetToPosition(change.getPosition(), Bias.Forward).getMajor();
+        int removedLines = change.getRemoved().getParagraphs().size() - 1;
+        int insertedLines = change.getInserted().getParagraphs().size() - 1;
 
-        boolean first = true;
-        for (Map.Entry<String, Style> entry : styles.entrySet()) {
-            if (!first) {
-                patternStringBuilder.append("|");
+        if (unterminatedParagraph >= 0) {
+            if (paragraph >= unterminatedParagraph) {
+                // The edit might terminate a construct left open until the end of the text
+                dirtyParagraphs.edit(unterminatedParagraph, 0, 0);
+            } else {
+                unterminatedParagraph = DirtyParagraphs.shift(unterminatedParagraph, paragraph, removedLines, insertedLines);
             }
-            patternStringBuilder.append("(?<").append(entry.getKey()).append(">").append(entry.getValue()).append(")");
-            first = false;
         }
 
-        String patternString = patternStringBuilder.toString();
-        syntaxPattern = Pattern.compile(patternString);
+        dirtyParagraphs.edit(paragraph, removedLines, insertedLines);
+        paragraphStates.edit(paragraph, removedLines, insertedLines);
+        stylingRevision++;
+        stylingRequests.push(stylingRevision);
+
+        if (metrics != null) {
+            if (!styleLagPending) {
+                styleLagStartNanos = System.nanoTime();
+                styleLagPending = true;
+            }
+            metrics.setDocumentSize(getLength(), getParagraphs().size());
+        }
     }
+
     public void setText(String text) {
         clear();
         replaceText(0, 0, text);
@@ -165,102 +337,1198 @@ public class StyledCodeEditor extends CodeArea {
         });
     }
 
-    private boolean stylingEnabled = true;
+    /**
+     * Searches the whole document in the background, replacing the previous search;
+     * hits are counted and highlighted as they are found, and the search is repeated after edits.
+     *
+     * @param query     the searched text or regular expression; empty to stop searching
+     * @param regex     true if the query is a regular expression
+     * @param matchCase true if the case of letters matters
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    public void find(String query, boolean regex, boolean matchCase) {
+        if (query.isEmpty()) {
+            clearSearch();
+            return;
+        }
+
+        searchPattern = DocumentSearch.compile(query, regex, matchCase);
+        searchRegex = regex;
+        startSearch();
+    }
 
     /**
-     * Stops the background thread employed for styling the editor
+     * Cancels the current search, removing its highlights
+     */
+    public void clearSearch() {
+        searchPattern = null;
+        searchGeneration++;
+        searching.set(false);
+        setSearchHits(new int[0], searchGeneration);
+    }
+
+    /**
+     * @return the number of hits found so far
+     */
+    public ReadOnlyIntegerProperty searchHitCountProperty() {
+        return searchHitCount.getReadOnlyProperty();
+    }
+
+    public int getSearchHitCount() {
+        return searchHitCount.get();
+    }
+
+    /**
+     * @return true while the document is being searched
+     */
+    public ReadOnlyBooleanProperty searchingProperty() {
+        return searching.getReadOnlyProperty();
+    }
+
+    public boolean isSearching() {
+        return searching.get();
+    }
+
+    /**
+     * Selects the first hit following the selection, wrapping around the document
+     *
+     * @return false if there are no hits
+     */
+    public boolean findNext() {
+        int hitCount = searchHitsLength / 2;
+        if (hitCount == 0) {
+            return false;
+        }
+
+        int hit = findFirstHitEndingAfter(getSelection().getEnd());
+        while (hit < hitCount && searchHits[hit * 2] < getSelection().getEnd()) {
+            hit++;
+        }
+
+        selectHit(hit < hitCount ? hit : 0);
+        return true;
+    }
+
+    /**
+     * Selects the last hit preceding the selection, wrapping around the document
+     *
+     * @return false if there are no hits
+     */
+    public boolean findPrevious() {
+        int hitCount = searchHitsLength / 2;
+        if (hitCount == 0) {
+            return false;
+        }
+
+        int hit = findFirstHitEndingAfter(getSelection().getStart()) - 1;
+        while (hit >= 0 && searchHits[hit * 2 + 1] > getSelection().getStart()) {
+            hit--;
+        }
+
+        selectHit(hit >= 0 ? hit : hitCount - 1);
+        return true;
+    }
+
+    /**
+     * Replaces every match of the current search, as a single edit - undone at once.
+     * <p>
+     * Replacements are computed in the background; if the document is edited meanwhile,
+     * they are computed again. Cancelling the returned future leaves the document unchanged.
+     *
+     * @param replacement the replacement text; for regular expressions, $n refers to the groups
+     * @return the number of replaced matches, once replaced
+     */
+    public CompletableFuture<Integer> replaceAll(String replacement) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        replaceAll(searchRegex ? replacement : Matcher.quoteReplacement(replacement), result);
+        return result;
+    }
+
+    private void replaceAll(String replacement, CompletableFuture<Integer> result) {
+        Pattern pattern = searchPattern;
+        if (pattern == null) {
+            result.complete(0);
+            return;
+        }
+
+        ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document = getContent().snapshot();
+        long revision = stylingRevision;
+
+        STYLING_EXECUTOR.execute(() -> {
+            DocumentSearch.Replacement replacements;
+            try {
+                replacements = DocumentSearch.replaceAll(document, pattern, replacement, result::isDone);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            // Cancelled by the caller: there is nothing to apply, nor to compute again
+            if (replacements == null || result.isDone()) {
+                return;
+            }
+
+            Platform.runLater(() -> {
+                if (result.isDone()) {
+                    return;
+                }
+
+                if (stylingRevision != revision || pattern != searchPattern) {
+                    replaceAll(replacement, result);
+                    return;
+                }
+
+                if (replacements.getCount() > 0) {
+                    replaceText(replacements.getStart(), replacements.getEnd(), replacements.getText());
+                }
+
+                result.complete(replacements.getCount());
+            });
+        });
+    }
+
+    private void startSearch() {
+        long generation = ++searchGeneration;
+        Pattern pattern = searchPattern;
+        ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document = getContent().snapshot();
+
+        searching.set(true);
+
+        STYLING_EXECUTOR.execute(() -> {
+            try {
+                DocumentSearch.findAll(
+                        document,
+                        pattern,
+                        SEARCH_BATCH_SIZE,
+                        batch -> Platform.runLater(() -> addSearchHits(batch, generation)),
+                        () -> searchGeneration != generation
+                );
+            } finally {
+                Platform.runLater(() -> finishSearch(generation));
+            }
+        });
+    }
+
+    /**
+     * The hits of the previous search are kept until the first hits of the new one arrive
+     */
+    private void addSearchHits(int[] batch, long generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+
+        if (searchHitsGeneration != generation) {
+            setSearchHits(batch, generation);
+            return;
+        }
+
+        if (searchHitsLength + batch.length > searchHits.length) {
+            searchHits = Arrays.copyOf(searchHits, Math.max(searchHits.length * 2, searchHitsLength + batch.length));
+        }
+        System.arraycopy(batch, 0, searchHits, searchHitsLength, batch.length);
+        searchHitsLength += batch.length;
+
+        searchHitCount.set(searchHitsLength / 2);
+        updateSearchHighlights();
+    }
+
+    private void finishSearch(long generation) {
+        if (generation != searchGeneration) {
+            return;
+        }
+
+        if (searchHitsGeneration != generation) {
+            setSearchHits(new int[0], generation);
+        }
+        searching.set(false);
+    }
+
+    private void setSearchHits(int[] hits, long generation) {
+        searchHits = hits;
+        searchHitsLength = hits.length;
+        searchHitsGeneration = generation;
+        searchHitCount.set(hits.length / 2);
+        updateSearchHighlights();
+    }
+
+    /**
+     * @return the index of the first hit ending after the given position, or the hit count if none
+     */
+    private int findFirstHitEndingAfter(int position) {
+        int low = 0;
+        int high = searchHitsLength / 2;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (searchHits[middle * 2 + 1] <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void selectHit(int hit) {
+        int length = getLength();
+        selectRange(Math.min(searchHits[hit * 2], length), Math.min(searchHits[hit * 2 + 1], length));
+        requestFollowCaret();
+    }
+
+    /**
+     * Highlights the hits in the viewport, through selections drawn below the text
+     * and independent of the syntax styles
+     */
+    private void updateSearchHighlights() {
+        int highlightCount = 0;
+        int visibleParagraphCount = getVisibleParagraphs().size();
+
+        if (searchHitsLength > 0 && visibleParagraphCount > 0) {
+            int lastVisibleParagraph = visibleParToAllParIndex(visibleParagraphCount - 1);
+            int visibleStart = getAbsolutePosition(visibleParToAllParIndex(0), 0);
+            int visibleEnd = getAbsolutePosition(lastVisibleParagraph, getParagraphLength(lastVisibleParagraph));
+            int length = getLength();
+
+            for (int hit = findFirstHitEndingAfter(visibleStart);
+                 hit < searchHitsLength / 2 && searchHits[hit * 2] <= visibleEnd && highlightCount < MAX_HIGHLIGHTED_HITS;
+                 hit++) {
+                int start = Math.min(searchHits[hit * 2], length);
+                int end = Math.min(searchHits[hit * 2 + 1], length);
+
+                if (highlightCount == hitHighlights.size()) {
+                    Selection<Collection<String>, String, Collection<String>> highlight =
+                            new SelectionImpl<>("search-hit-" + highlightCount, this, path -> path.getStyleClass().add("search-hit"));
+                    addSelection(highlight);
+                    hitHighlights.add(highlight);
+                }
+
+                hitHighlights.get(highlightCount).selectRange(start, end);
+                highlightCount++;
+            }
+        }
+
+        while (hitHighlights.size() > highlightCount) {
+            Selection<Collection<String>, String, Collection<String>> highlight = hitHighlights.remove(hitHighlights.size() - 1);
+            removeSelection(highlight);
+            highlight.dispose();
+        }
+    }
+
+    /**
+     * Pauses styling, for instance while the editor is hidden: edits are still tracked,
+     * and the paragraphs they dirtied are restyled once styling is resumed
+     */
+    public void setStylingPaused(boolean paused) {
+        if (paused == stylingPaused) {
+            return;
+        }
+
+        stylingPaused = paused;
+        if (!paused && !dirtyParagraphs.isEmpty()) {
+            stylingRequests.push(stylingRevision);
+        }
+    }
+
+    public boolean isStylingPaused() {
+        return stylingPaused;
+    }
+
+    /**
+     * @return true if some edited paragraphs are still to be styled
+     */
+    public boolean isStylingPending() {
+        return !dirtyParagraphs.isEmpty();
+    }
+
+    /**
+     * @return the hash of the patterns, telling whether styles computed elsewhere still apply
+     */
+    int getRulesHash() {
+        return styles.hashCode();
+    }
+
+    /**
+     * Captures the styles of the whole document, so that they can be restored along with the same text
+     *
+     * @return the snapshot, or an empty Optional if some paragraphs are still to be styled
+     */
+    public Optional<HighlightSnapshot> snapshotHighlighting() {
+        if (!dirtyParagraphs.isEmpty() || getLength() == 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(HighlightSnapshot.encode(
+                getRulesHash(),
+                getStyleSpans(0, getLength()),
+                paragraphStates.copy(0, paragraphStates.size()),
+                unterminatedParagraph
+        ));
+    }
+
+    /**
+     * Applies styles captured earlier for the same text, instead of lexing it again.
+     * The caller is in charge of making sure that the text is the same.
+     *
+     * @return false if the snapshot does not fit the document or the current patterns,
+     * in which case the document is styled as usual
+     */
+    public boolean restoreHighlighting(HighlightSnapshot snapshot) {
+        if (snapshot.getRulesHash() != getRulesHash()
+                || snapshot.getLength() != getLength()
+                || snapshot.getParagraphCount() != getParagraphs().size()) {
+            return false;
+        }
+
+        HighlightSnapshot.Contents contents;
+        try {
+            contents = snapshot.decode();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        applyingHighlighting = true;
+        try {
+            setStyleSpans(0, contents.getStyleSpans());
+        } finally {
+            applyingHighlighting = false;
+        }
+
+        paragraphStates.reset(contents.getParagraphStates().length);
+        paragraphStates.set(0, contents.getParagraphStates(), contents.getParagraphStates().length);
+        unterminatedParagraph = contents.getUnterminatedParagraph();
+        dirtyParagraphs.clear();
+        styleLagPending = false;
+
+        // Passes still running refer to the previous styles
+        stylingRevision++;
+        return true;
+    }
+
+    /**
+     * Sets the cache looked up whenever the whole document needs styling - as after opening it,
+     * or replacing all its text - and filled once such a document is styled
+     *
+     * @param highlightCache the cache, or null for none
+     */
+    public void setHighlightCache(HighlightCache highlightCache) {
+        this.highlightCache = highlightCache;
+    }
+
+    public HighlightCache getHighlightCache() {
+        return highlightCache;
+    }
+
+    /**
+     * Sets the metrics recording the styling passes of the editor, and the size of its document
+     *
+     * @param metrics the metrics, or null for none
+     */
+    public void setMetrics(EditorMetrics metrics) {
+        this.metrics = metrics;
+        styleLagPending = false;
+        if (metrics != null) {
+            metrics.setDocumentSize(getLength(), getParagraphs().size());
+        }
+    }
+
+    public EditorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops styling the editor
      */
     public void stopStyling() {
-        stylingEnabled = false;
-    }
-
-    private class StyleDaemon extends Thread {
-        private final StyledCodeEditor codeEditor;
-        private final Duration sleepDuration;
-        private final Semaphore guiSemaphore = new Semaphore(0);
-
-        public StyleDaemon(StyledCodeEditor codeEditor, Duration sleepDuration) {
-            this.codeEditor = codeEditor;
-            this.sleepDuration = sleepDuration;
-            setDaemon(true);
-        }
-
-        @Override
-        public void run() {
-            AtomicReference<String> text = new AtomicReference<>("");
-            AtomicReference<java.lang.String> latestStyledText = new AtomicReference<>("");;
-            while (codeEditor.stylingEnabled) {
-                Platform.runLater(() -> {
-                    // 更新引用值
-                    text.compareAndSet("", codeEditor.getText());
-//                    text = codeEditor.getText();
-                    guiSemaphore.release();
-                });
-
-                try {
-                    guiSemaphore.acquire();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+        stylingSubscription.unsubscribe();
+    }
+
+    /**
+     * Snapshots the document and restyles its dirty paragraphs in the background.
+     * The snapshot is immutable, so the editor can be edited meanwhile.
+     */
+    private Task<HighlightResult> highlightAsync() {
+        HighlightRequest request = createHighlightRequest();
+        EditorMetrics passMetrics = metrics;
+
+        Task<HighlightResult> task = new Task<>() {
+            @Override
+            protected HighlightResult call() {
+                PerformanceEvents.HighlightPass event = new PerformanceEvents.HighlightPass();
+                event.begin();
+                long startNanos = System.nanoTime();
+                HighlightResult result = computeHighlighting(request, this::isCancelled);
+                if (passMetrics != null) {
+                    passMetrics.recordHighlightPass(System.nanoTime() - startNanos);
                 }
 
-                if (!text.equals(latestStyledText)) {
-                    StyleSpans<Collection<String>> styleSpans = computeHighlighting(text.get());
-
-                    Platform.runLater(() -> {
-                        try {
-                            codeEditor.setStyleSpans(0, styleSpans);
-                            // 更新引用值
-                            latestStyledText.compareAndSet("", text.get());
-//                            latestStyledText = text;
-                        } catch (Exception ignored) {
-                            // Just do nothing
-                        }
-                        guiSemaphore.release();
-                    });
-
-                    try {
-                        guiSemaphore.acquire();
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.firstParagraph = result.startParagraph;
+                    event.endParagraph = result.endParagraph;
+                    event.provisional = result.provisional;
+                    event.fromCache = result.fromCache;
+                    event.commit();
                 }
+                return result;
+            }
+        };
 
-                try {
-                    Thread.sleep(sleepDuration.toMillis());
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+        STYLING_EXECUTOR.execute(task);
+        return task;
+    }
+
+    /**
+     * Dirty paragraphs are usually restyled in document order, one chunk per pass.
+     * <p>
+     * However, when the dirty range starts well above the viewport and reaches into it,
+     * the visible paragraphs are styled first, by a <em>provisional</em> pass assuming
+     * that no multi-line token is open at the first visible paragraph; the chunked passes
+     * later confirm or fix such styles as they get there.
+     */
+    private HighlightRequest createHighlightRequest() {
+        ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document = getContent().snapshot();
+        int firstDirtyParagraph = dirtyParagraphs.getFirst();
+        int lastDirtyParagraph = dirtyParagraphs.getLast();
+
+        // Looked up once per revision: if missing, the document is styled as usual, then stored
+        if (highlightCache != null
+                && cacheLookupRevision != stylingRevision
+                && firstDirtyParagraph == 0
+                && lastDirtyParagraph >= document.getParagraphCount() - 1
+                && document.length() >= HIGHLIGHT_CACHE_MIN_LENGTH) {
+            cacheLookupRevision = stylingRevision;
+            return new HighlightRequest(
+                    document,
+                    syntaxLexer,
+                    0,
+                    lastDirtyParagraph,
+                    paragraphStates.copy(0, STYLING_CHUNK_PARAGRAPHS + 1),
+                    unterminatedParagraph,
+                    stylingRevision
+            ).withCache(highlightCache, getRulesHash());
+        }
+
+        int visibleParagraphCount = getVisibleParagraphs().size();
+        if (visibleParagraphCount > 0) {
+            int firstVisibleParagraph = visibleParToAllParIndex(0);
+            int lastVisibleParagraph = visibleParToAllParIndex(visibleParagraphCount - 1);
+
+            boolean viewportStyled = provisionalRevision == stylingRevision
+                    && firstVisibleParagraph >= provisionalFirstParagraph
+                    && lastVisibleParagraph <= provisionalLastParagraph;
+
+            if (!viewportStyled
+                    && firstVisibleParagraph - firstDirtyParagraph > STYLING_CHUNK_PARAGRAPHS
+                    && lastDirtyParagraph >= firstVisibleParagraph) {
+                return HighlightRequest.provisional(document, syntaxLexer, firstVisibleParagraph, lastVisibleParagraph, stylingRevision);
+            }
+        }
+
+        int firstParagraph = paragraphStates.findRestartParagraph(Math.min(firstDirtyParagraph, document.getParagraphCount() - 1));
+
+        return new HighlightRequest(
+                document,
+                syntaxLexer,
+                firstParagraph,
+                lastDirtyParagraph,
+                paragraphStates.copy(firstParagraph, firstParagraph + STYLING_CHUNK_PARAGRAPHS + 1),
+                unterminatedParagraph,
+                stylingRevision
+        );
+    }
+
+    private void applyHighlighting(HighlightResult result) {
+        // Edits performed meanwhile have already extended the dirty range and requested a new pass
+        if (result.revision != stylingRevision) {
+            return;
+        }
+
+        PerformanceEvents.StyleApplication event = new PerformanceEvents.StyleApplication();
+        event.begin();
+        long startNanos = System.nanoTime();
+
+        if (!result.stylePatches.isEmpty()) {
+            int startPosition = getAbsolutePosition(result.startParagraph, 0);
+
+            applyingHighlighting = true;
+            try {
+                for (StyleSpansDiff.Patch<Collection<String>> stylePatch : result.stylePatches) {
+                    setStyleSpans(startPosition + stylePatch.getOffset(), stylePatch.getStyleSpans());
                 }
+            } finally {
+                applyingHighlighting = false;
+            }
+        }
+
+        if (result.provisional) {
+            provisionalFirstParagraph = result.startParagraph;
+            provisionalLastParagraph = result.endParagraph - 1;
+            provisionalRevision = result.revision;
+        } else {
+            paragraphStates.set(result.startParagraph + 1, result.paragraphStates, result.paragraphStates.length);
+            unterminatedParagraph = result.unterminatedParagraph;
+
+            if (result.endParagraph < getParagraphs().size() && !result.converged) {
+                // The pass stopped at the end of its chunk, on a paragraph where no token is open
+                dirtyParagraphs.cleanUpTo(result.endParagraph);
+            } else {
+                dirtyParagraphs.clear();
+            }
+        }
+
+        if (!dirtyParagraphs.isEmpty()) {
+            continuationRequests.push(result.revision);
+        } else if (result.revision == cacheLookupRevision) {
+            cacheLookupRevision = -1;
+            if (!result.fromCache) {
+                storeHighlighting();
+            }
+        }
+
+        if (metrics != null) {
+            long endNanos = System.nanoTime();
+            metrics.recordStyleApplication(endNanos - startNanos);
+            if (styleLagPending && dirtyParagraphs.isEmpty()) {
+                metrics.recordStyleLag(endNanos - styleLagStartNanos);
+                styleLagPending = false;
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.startParagraph = result.startParagraph;
+            event.endParagraph = result.endParagraph;
+            event.patches = result.stylePatches.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Stores the styles of the whole document in the cache, encoding them in the background
+     */
+    private void storeHighlighting() {
+        HighlightCache cache = highlightCache;
+        ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document = getContent().snapshot();
+        short[] states = paragraphStates.copy(0, paragraphStates.size());
+        int unterminated = unterminatedParagraph;
+        int rulesHash = getRulesHash();
+
+        STYLING_EXECUTOR.execute(() -> {
+            try {
+                HighlightSnapshot snapshot = HighlightSnapshot.encode(rulesHash, document.getStyleSpans(0, document.length()), states, unterminated);
+                cache.store(HighlightCache.computeKey(document, rulesHash), snapshot);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Restyles the dirty paragraphs only.
+     * <p>
+     * Lexing starts at the first dirty paragraph - or earlier, at the nearest paragraph
+     * where no token is open - and stops at the first paragraph past the dirty range
+     * where, both before and after the edit, no token is open,
+     * so that the cost depends on the size of the edit, not on the size of the document.
+     * <p>
+     * In any case, a pass stops after restyling a chunk of paragraphs, on a paragraph
+     * where no token is open, so that the next pass can resume from there.
+     *
+     * @throws CancellationException if the pass was cancelled, having become stale
+     */
+    private static HighlightResult computeHighlighting(HighlightRequest request, BooleanSupplier cancelled) {
+        if (request.highlightCache != null) {
+            Optional<HighlightResult> cachedResult = loadCachedHighlighting(request);
+            if (cachedResult.isPresent()) {
+                return cachedResult.get();
+            }
+        }
+
+        int paragraphCount = request.document.getParagraphCount();
+
+        int lastDirtyParagraph = Math.min(request.lastDirtyParagraph, paragraphCount - 1);
+        int firstParagraph = Math.min(request.firstParagraph, lastDirtyParagraph);
+
+        if (!request.provisional && PARALLEL_STYLING_CHUNKS > 1 && lastDirtyParagraph - firstParagraph >= 2 * STYLING_CHUNK_PARAGRAPHS) {
+            return computeHighlightingInParallel(request, firstParagraph, lastDirtyParagraph, STYLING_CHUNK_PARAGRAPHS, PARALLEL_STYLING_CHUNKS, cancelled);
+        }
+
+        LexedChunk chunk = request.provisional
+                ? lexChunk(request, firstParagraph, lastDirtyParagraph - firstParagraph + 1, Integer.MAX_VALUE, request.paragraphStates, true, cancelled)
+                : lexChunk(request, firstParagraph, STYLING_CHUNK_PARAGRAPHS, lastDirtyParagraph, request.paragraphStates, false, cancelled);
+
+        int unterminatedParagraph = mergeUnterminatedParagraph(request, firstParagraph, chunk.endParagraph, chunk.unterminatedParagraph);
+
+        return new HighlightResult(request, firstParagraph, chunk.endParagraph, chunk.spans.isConverged(), chunk.spans.create(), chunk.spans.getParagraphStates(), unterminatedParagraph);
+    }
+
+    /**
+     * Restyles a large dirty range, as after opening a document, on all the available cores.
+     * <p>
+     * The range is split into chunks, lexed at the same time, each assuming that no token
+     * is open where it starts; the chunks are then joined in order. Where the previous chunk
+     * actually ended inside a token, it has gone on lexing past its end, up to a paragraph
+     * where no token is open: if the next chunk is in the same state there, it is right
+     * from that paragraph on; otherwise, lexing goes on until the two agree, or up to
+     * the end of the next chunk, which is then replaced. The result is the same as
+     * lexing the range in one go.
+     */
+    private static HighlightResult computeHighlightingInParallel(HighlightRequest request, int firstParagraph, int lastDirtyParagraph, int chunkParagraphs, int parallelChunks, BooleanSupplier cancelled) {
+        ChunkJoiner joiner = lexInParallel(request, firstParagraph, lastDirtyParagraph, chunkParagraphs, parallelChunks, cancelled);
+
+        int endParagraph = joiner.getEndParagraph();
+        int unterminatedParagraph = mergeUnterminatedParagraph(request, firstParagraph, endParagraph, joiner.getUnterminatedParagraph());
+
+        return new HighlightResult(request, firstParagraph, endParagraph, false, joiner.createSpans(), joiner.getParagraphStates(), unterminatedParagraph);
+    }
+
+    private static ChunkJoiner lexInParallel(HighlightRequest request, int firstParagraph, int lastDirtyParagraph, int chunkParagraphs, int parallelChunks, BooleanSupplier cancelled) {
+        int batchEndParagraph = Math.min(lastDirtyParagraph + 1, firstParagraph + parallelChunks * chunkParagraphs);
+
+        List<Callable<LexedChunk>> chunkTasks = new ArrayList<>();
+        for (int chunkStart = firstParagraph; chunkStart < batchEndParagraph; chunkStart += chunkParagraphs) {
+            int start = chunkStart;
+            int maxParagraphs = Math.min(chunkParagraphs, batchEndParagraph - chunkStart);
+            chunkTasks.add(() -> lexChunk(request, start, maxParagraphs, Integer.MAX_VALUE, new short[0], false, cancelled));
+        }
+
+        List<LexedChunk> chunks = new ArrayList<>();
+        try {
+            for (Future<LexedChunk> chunkFuture : PARALLEL_STYLING_POOL.invokeAll(chunkTasks)) {
+                chunks.add(chunkFuture.get());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
         }
 
-        private StyleSpans<Collection<String>> computeHighlighting(String text) {
-            StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        ChunkJoiner joiner = new ChunkJoiner(firstParagraph);
+        joiner.append(chunks.get(0), firstParagraph);
+
+        for (LexedChunk chunk : chunks.subList(1, chunks.size())) {
+            int paragraph = joiner.getEndParagraph();
+            if (paragraph >= chunk.endParagraph) {
+                continue;
+            }
 
-            Matcher matcher = syntaxPattern.matcher(text);
+            if (chunk.getState(paragraph) == ParagraphStates.CLEAN) {
+                joiner.append(chunk, paragraph);
+                continue;
+            }
+
+            LexedChunk continuation = lexChunk(request, paragraph, chunk.endParagraph - paragraph, paragraph, chunk.getStates(paragraph), false, cancelled);
+            joiner.append(continuation, paragraph);
+            if (continuation.spans.isConverged()) {
+                joiner.append(chunk, continuation.endParagraph);
+            }
+        }
+
+        return joiner;
+    }
+
+    /**
+     * Lexes a whole document in a single pass, either sequentially or in parallel chunks:
+     * both must give the same styles and states, which tests compare on small chunks.
+     *
+     * @param chunkParagraphs the paragraphs per parallel chunk; 0 to lex sequentially
+     */
+    static HighlightSnapshot.Contents lexDocument(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer, int chunkParagraphs) {
+        int paragraphCount = document.getParagraphCount();
+        HighlightRequest request = new HighlightRequest(document, lexer, 0, paragraphCount - 1, new short[0], -1, 0);
+
+        if (chunkParagraphs > 0) {
+            int chunkCount = (paragraphCount + chunkParagraphs - 1) / chunkParagraphs;
+            ChunkJoiner joiner = lexInParallel(request, 0, paragraphCount - 1, chunkParagraphs, chunkCount, () -> false);
+            return new HighlightSnapshot.Contents(joiner.createSpans(), joiner.getParagraphStates(), joiner.getUnterminatedParagraph());
+        }
+
+        LexedChunk chunk = lexChunk(request, 0, paragraphCount, Integer.MAX_VALUE, new short[0], false, () -> false);
+        return new HighlightSnapshot.Contents(chunk.spans.create(), chunk.spans.getParagraphStates(), chunk.unterminatedParagraph);
+    }
+
+    /**
+     * Styles a whole document as a full restyle does - pass after pass, with the same
+     * chunking and parallelism - but without an editor, which the styles are not applied to.
+     * This is the path measured by the benchmarks.
+     *
+     * @return the number of style patches the passes would apply
+     */
+    static int highlightDocument(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer) {
+        int paragraphCount = document.getParagraphCount();
+        ParagraphStates states = new ParagraphStates();
+        states.reset(paragraphCount);
+        int unterminatedParagraph = -1;
+        int patchCount = 0;
+
+        int firstParagraph = 0;
+        while (true) {
+            HighlightResult result = computeHighlighting(
+                    new HighlightRequest(
+                            document,
+                            lexer,
+                            firstParagraph,
+                            paragraphCount - 1,
+                            states.copy(firstParagraph, firstParagraph + STYLING_CHUNK_PARAGRAPHS + 1),
+                            unterminatedParagraph,
+                            0
+                    ),
+                    () -> false
+            );
+
+            states.set(result.startParagraph + 1, result.paragraphStates, result.paragraphStates.length);
+            unterminatedParagraph = result.unterminatedParagraph;
+            patchCount += result.stylePatches.size();
+
+            if (result.endParagraph >= paragraphCount || result.converged) {
+                return patchCount;
+            }
+            firstParagraph = result.endParagraph;
+        }
+    }
+
+    /**
+     * @return the styles of the whole document, if the cache holds them for the same text and rules
+     */
+    private static Optional<HighlightResult> loadCachedHighlighting(HighlightRequest request) {
+        Optional<HighlightSnapshot> snapshot = request.highlightCache.load(HighlightCache.computeKey(request.document, request.rulesHash));
+        if (snapshot.isEmpty()
+                || snapshot.get().getLength() != request.document.length()
+                || snapshot.get().getParagraphCount() != request.document.getParagraphCount()) {
+            return Optional.empty();
+        }
+
+        HighlightSnapshot.Contents contents;
+        try {
+            contents = snapshot.get().decode();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+
+        short[] states = contents.getParagraphStates();
+        return Optional.of(HighlightResult.fromCache(
+                request,
+                contents.getStyleSpans(),
+                Arrays.copyOfRange(states, 1, states.length),
+                contents.getUnterminatedParagraph()
+        ));
+    }
+
+    /**
+     * Lexes the document from a paragraph where no token is open, until the spans stop.
+     *
+     * @param lastDirtyParagraph the last paragraph whose text might differ from the previous pass
+     * @param previousStates     the states recorded by the previous pass, starting at the first paragraph
+     */
+    private static LexedChunk lexChunk(HighlightRequest request, int firstParagraph, int maxParagraphs, int lastDirtyParagraph, short[] previousStates, boolean stopInsideTokens, BooleanSupplier cancelled) {
+        DocumentText text = new DocumentText(request.document, firstParagraph);
+        IncrementalSpans spans = new IncrementalSpans(text, lastDirtyParagraph, previousStates, maxParagraphs, stopInsideTokens);
+        int[] hitEndParagraphs = new int[0];
+
+        if (!request.lexer.isEmpty()) {
+            SyntaxLexer.Scanner scanner = request.lexer.scanner(text);
             int latestMatchEndPosition = 0;
 
-            while (matcher.find()) {
-                String styleKey = null;
-                for (String key : styles.keySet()) {
-                    if (matcher.group(key) != null) {
-                        styleKey = key;
-                        break;
-                    }
+            while (scanner.next()) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException();
+                }
+
+                if (scanner.hitEnd()) {
+                    hitEndParagraphs = addHitEndParagraph(hitEndParagraphs, firstParagraph + text.getParagraphAt(latestMatchEndPosition));
+                }
+
+                spans.add(Collections.emptyList(), ParagraphStates.CLEAN, scanner.getStart() - latestMatchEndPosition);
+                if (spans.isStopped()) {
+                    break;
+                }
+                spans.add(Collections.singletonList(scanner.getStyle().getCssClass()), ParagraphStates.insideToken(scanner.getRule()), scanner.getEnd() - scanner.getStart());
+                latestMatchEndPosition = scanner.getEnd();
+            }
+
+            if (!spans.isStopped() && scanner.hitEnd()) {
+                hitEndParagraphs = addHitEndParagraph(hitEndParagraphs, firstParagraph + text.getParagraphAt(latestMatchEndPosition));
+            }
+            if (!spans.isStopped()) {
+                spans.add(Collections.emptyList(), ParagraphStates.CLEAN, text.length() - latestMatchEndPosition);
+            }
+        } else {
+            spans.add(Collections.emptyList(), ParagraphStates.CLEAN, text.length());
+        }
+
+        return new LexedChunk(text, spans, hitEndParagraphs);
+    }
+
+    /**
+     * @param hitEndParagraphs the paragraphs recorded so far, in ascending order
+     */
+    private static int[] addHitEndParagraph(int[] hitEndParagraphs, int paragraph) {
+        if (hitEndParagraphs.length > 0 && hitEndParagraphs[hitEndParagraphs.length - 1] == paragraph) {
+            return hitEndParagraphs;
+        }
+
+        int[] result = Arrays.copyOf(hitEndParagraphs, hitEndParagraphs.length + 1);
+        result[hitEndParagraphs.length] = paragraph;
+        return result;
+    }
+
+    /**
+     * The constructs left open until the end of the text by the previous passes
+     * still matter, unless the new pass lexed their paragraph again
+     */
+    private static int mergeUnterminatedParagraph(HighlightRequest request, int firstParagraph, int endParagraph, int unterminatedParagraph) {
+        int previousUnterminated = request.unterminatedParagraph;
+        if (previousUnterminated >= 0 && (previousUnterminated < firstParagraph || previousUnterminated >= endParagraph)) {
+            return unterminatedParagraph < 0 ? previousUnterminated : Math.min(unterminatedParagraph, previousUnterminated);
+        }
+        return unterminatedParagraph;
+    }
+
+    private static class HighlightRequest {
+        private final ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document;
+        private final SyntaxLexer lexer;
+        private final int firstParagraph;
+        private final int lastDirtyParagraph;
+        private final short[] paragraphStates;
+        private final boolean provisional;
+        private final int unterminatedParagraph;
+        private final long revision;
+        private final HighlightCache highlightCache;
+        private final int rulesHash;
+
+        /**
+         * @param firstParagraph  the paragraph where lexing starts; no token is open there
+         * @param paragraphStates the states of the paragraphs starting at firstParagraph, as far as they are worth comparing
+         */
+        HighlightRequest(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer, int firstParagraph, int lastDirtyParagraph, short[] paragraphStates, int unterminatedParagraph, long revision) {
+            this(document, lexer, firstParagraph, lastDirtyParagraph, paragraphStates, false, unterminatedParagraph, revision);
+        }
+
+        private HighlightRequest(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer, int firstParagraph, int lastDirtyParagraph, short[] paragraphStates, boolean provisional, int unterminatedParagraph, long revision) {
+            this(document, lexer, firstParagraph, lastDirtyParagraph, paragraphStates, provisional, unterminatedParagraph, revision, null, 0);
+        }
+
+        private HighlightRequest(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer, int firstParagraph, int lastDirtyParagraph, short[] paragraphStates, boolean provisional, int unterminatedParagraph, long revision, HighlightCache highlightCache, int rulesHash) {
+            this.document = document;
+            this.lexer = lexer;
+            this.firstParagraph = firstParagraph;
+            this.lastDirtyParagraph = lastDirtyParagraph;
+            this.paragraphStates = paragraphStates;
+            this.provisional = provisional;
+            this.unterminatedParagraph = unterminatedParagraph;
+            this.revision = revision;
+            this.highlightCache = highlightCache;
+            this.rulesHash = rulesHash;
+        }
+
+        /**
+         * @return the same request, first looking up the styles of the whole document in the cache
+         */
+        HighlightRequest withCache(HighlightCache highlightCache, int rulesHash) {
+            return new HighlightRequest(document, lexer, firstParagraph, lastDirtyParagraph, paragraphStates, provisional, unterminatedParagraph, revision, highlightCache, rulesHash);
+        }
+
+        static HighlightRequest provisional(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, SyntaxLexer lexer, int firstParagraph, int lastParagraph, long revision) {
+            return new HighlightRequest(document, lexer, firstParagraph, lastParagraph, new short[0], true, -1, revision);
+        }
+    }
+
+    private static List<StyleSpansDiff.Patch<Collection<String>>> diffStyles(ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document, int startParagraph, StyleSpans<Collection<String>> styleSpans) {
+        if (styleSpans == null) {
+            return Collections.emptyList();
+        }
+
+        int startPosition = document.getAbsolutePosition(startParagraph, 0);
+        StyleSpans<Collection<String>> appliedSpans = document.getStyleSpans(startPosition, startPosition + styleSpans.length());
+
+        return StyleSpansDiff.diff(appliedSpans, styleSpans, STYLE_PATCH_MERGE_DISTANCE);
+    }
+
+    private static class HighlightResult {
+        private final int startParagraph;
+        private final int endParagraph;
+        private final boolean converged;
+        private final boolean provisional;
+        private final List<StyleSpansDiff.Patch<Collection<String>>> stylePatches;
+        private final short[] paragraphStates;
+        private final int unterminatedParagraph;
+        private final long revision;
+        private final boolean fromCache;
+
+        /**
+         * @param styleSpans      the new styles, starting at startParagraph; they are compared with
+         *                        the ones in the request snapshot, so that only the changes are applied
+         * @param paragraphStates the states of the paragraphs following startParagraph, up to endParagraph included if it exists
+         */
+        HighlightResult(HighlightRequest request, int startParagraph, int endParagraph, boolean converged, StyleSpans<Collection<String>> styleSpans, short[] paragraphStates, int unterminatedParagraph) {
+            this(request, startParagraph, endParagraph, converged, styleSpans, paragraphStates, unterminatedParagraph, false);
+        }
+
+        private HighlightResult(HighlightRequest request, int startParagraph, int endParagraph, boolean converged, StyleSpans<Collection<String>> styleSpans, short[] paragraphStates, int unterminatedParagraph, boolean fromCache) {
+            this.startParagraph = startParagraph;
+            this.endParagraph = endParagraph;
+            this.converged = converged;
+            this.provisional = request.provisional;
+            this.stylePatches = diffStyles(request.document, startParagraph, styleSpans);
+            this.paragraphStates = paragraphStates;
+            this.unterminatedParagraph = unterminatedParagraph;
+            this.revision = request.revision;
+            this.fromCache = fromCache;
+        }
+
+        /**
+         * @return the result styling the whole document with the cached styles
+         */
+        static HighlightResult fromCache(HighlightRequest request, StyleSpans<Collection<String>> styleSpans, short[] paragraphStates, int unterminatedParagraph) {
+            return new HighlightResult(request, 0, request.document.getParagraphCount(), true, styleSpans, paragraphStates, unterminatedParagraph, true);
+        }
+    }
+
+    private static class LexedChunk {
+        private final DocumentText text;
+        private final IncrementalSpans spans;
+        private final int firstParagraph;
+        private final int endParagraph;
+        private final int unterminatedParagraph;
+
+        /**
+         * Where the scanner hit the end of the text - not only the first time, which is the unterminated
+         * paragraph of a whole chunk: a chunk lexed from a wrong state may hit the end in its discarded part
+         */
+        private final int[] hitEndParagraphs;
+
+        /**
+         * @param hitEndParagraphs the paragraphs of the latest match whenever the scanner hit the end, in ascending order
+         */
+        LexedChunk(DocumentText text, IncrementalSpans spans, int[] hitEndParagraphs) {
+            this.text = text;
+            this.spans = spans;
+            this.firstParagraph = text.getFirstParagraph();
+            this.endParagraph = firstParagraph + spans.getParagraphCount();
+            this.hitEndParagraphs = hitEndParagraphs;
+            this.unterminatedParagraph = hitEndParagraphs.length > 0 ? hitEndParagraphs[0] : -1;
+        }
+
+        /**
+         * @return the unterminated paragraph of the chunk, from the given paragraph on; -1 if none
+         */
+        int getUnterminatedParagraph(int fromParagraph) {
+            for (int paragraph : hitEndParagraphs) {
+                if (paragraph >= fromParagraph) {
+                    return paragraph;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return the state at the start of a paragraph of the chunk, as computed by the chunk itself
+         */
+        short getState(int paragraph) {
+            return paragraph == firstParagraph ? ParagraphStates.CLEAN : spans.getParagraphState(paragraph - firstParagraph);
+        }
+
+        /**
+         * @return the states from the given paragraph up to the end of the chunk
+         */
+        short[] getStates(int paragraph) {
+            short[] result = new short[Math.min(endParagraph, text.getFirstParagraph() + text.getParagraphCount() - 1) - paragraph + 1];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = getState(paragraph + i);
+            }
+            return result;
+        }
+
+        /**
+         * @return the offset of a paragraph within the chunk text, or the text length if the paragraph does not exist
+         */
+        int getParagraphStart(int paragraph) {
+            int relativeParagraph = paragraph - firstParagraph;
+            return relativeParagraph < text.getParagraphCount() ? text.getParagraphStart(relativeParagraph) : text.length();
+        }
+    }
+
+    /**
+     * Joins consecutive ranges of lexed chunks into the result of a single pass
+     */
+    private static class ChunkJoiner {
+        private final int firstParagraph;
+        private final StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        private short[] paragraphStates = new short[16];
+        private int stateCount = 0;
+        private int endParagraph;
+        private boolean empty = true;
+        private int unterminatedParagraph = -1;
+
+        ChunkJoiner(int firstParagraph) {
+            this.firstParagraph = firstParagraph;
+            this.endParagraph = firstParagraph;
+        }
+
+        /**
+         * Appends a chunk, from the given paragraph to its end
+         */
+        void append(LexedChunk chunk, int fromParagraph) {
+            int from = chunk.getParagraphStart(fromParagraph);
+            int to = chunk.getParagraphStart(chunk.endParagraph);
+
+            if (to > from) {
+                for (StyleSpan<Collection<String>> span : chunk.spans.create().subView(from, to)) {
+                    spansBuilder.add(span);
                 }
+                empty = false;
+            }
+
+            int lastParagraph = Math.min(chunk.endParagraph, chunk.text.getFirstParagraph() + chunk.text.getParagraphCount() - 1);
+            stateCount = lastParagraph - firstParagraph;
+            if (stateCount > paragraphStates.length) {
+                paragraphStates = Arrays.copyOf(paragraphStates, Math.max(stateCount, paragraphStates.length * 2));
+            }
+            for (int paragraph = fromParagraph + 1; paragraph <= lastParagraph; paragraph++) {
+                paragraphStates[paragraph - firstParagraph - 1] = chunk.getState(paragraph);
+            }
 
-                if (styleKey != null) {
-                    String styleClass = styles.get(styleKey).getCssClass();
+            endParagraph = chunk.endParagraph;
+            int chunkUnterminatedParagraph = chunk.getUnterminatedParagraph(fromParagraph);
+            if (chunkUnterminatedParagraph >= 0 && (unterminatedParagraph < 0 || chunkUnterminatedParagraph < unterminatedParagraph)) {
+                unterminatedParagraph = chunkUnterminatedParagraph;
+            }
+        }
+
+        int getEndParagraph() {
+            return endParagraph;
+        }
+
+        int getUnterminatedParagraph() {
+            return unterminatedParagraph;
+        }
+
+        short[] getParagraphStates() {
+            return Arrays.copyOf(paragraphStates, stateCount);
+        }
+
+        StyleSpans<Collection<String>> createSpans() {
+            return empty ? null : spansBuilder.create();
+        }
+    }
+
+    /**
+     * Accumulates the spans of an incremental pass, tracking paragraph boundaries
+     * to record the lexer state at the start of each paragraph, and to detect when
+     * the pass reaches a state matching the previous one, or has restyled enough paragraphs.
+     */
+    private static class IncrementalSpans {
+        private final DocumentText text;
+        private final int lastDirtyParagraph;
+        private final short[] previousStates;
+        private final int maxParagraphs;
+        private final boolean stopInsideTokens;
 
-                    spansBuilder.add(Collections.emptyList(), matcher.start() - latestMatchEndPosition);
-                    spansBuilder.add(Collections.singletonList(styleClass), matcher.end() - matcher.start());
-                    latestMatchEndPosition = matcher.end();
+        private final StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        private StyleSpans<Collection<String>> styleSpans;
+        private short[] paragraphStates = new short[16];
+        private int paragraph = 0;
+        private int position = 0;
+        private boolean empty = true;
+        private boolean converged = false;
+        private boolean stopped = false;
+
+        IncrementalSpans(DocumentText text, int lastDirtyParagraph, short[] previousStates, int maxParagraphs, boolean stopInsideTokens) {
+            this.text = text;
+            this.lastDirtyParagraph = lastDirtyParagraph;
+            this.previousStates = previousStates;
+            this.maxParagraphs = maxParagraphs;
+            this.stopInsideTokens = stopInsideTokens;
+        }
+
+        /**
+         * @param state the state of paragraphs starting inside the added piece of text
+         */
+        void add(Collection<String> style, short state, int length) {
+            int end = position + length;
+
+            while (!stopped) {
+                int paragraphEnd = text.getParagraphStart(paragraph) + text.getParagraphLength(paragraph);
+
+                if (paragraph == text.getParagraphCount() - 1 || end <= paragraphEnd) {
+                    addPiece(style, end - position);
+                    return;
+                }
+
+                addPiece(style, paragraphEnd - position);
+
+                // The line break belongs to the token only when the token goes on
+                boolean tokenOpen = state != ParagraphStates.CLEAN && end > paragraphEnd + 1;
+                addPiece(tokenOpen ? style : Collections.emptyList(), 1);
+
+                paragraph++;
+                short nextState = tokenOpen ? state : ParagraphStates.CLEAN;
+                if (paragraph > paragraphStates.length) {
+                    paragraphStates = Arrays.copyOf(paragraphStates, paragraphStates.length * 2);
                 }
+                paragraphStates[paragraph - 1] = nextState;
+
+                // The following paragraphs are unchanged, so they would be lexed as before
+                converged = nextState == ParagraphStates.CLEAN
+                        && text.getFirstParagraph() + paragraph > lastDirtyParagraph
+                        && paragraph < previousStates.length
+                        && previousStates[paragraph] == ParagraphStates.CLEAN;
+
+                stopped = converged || (!tokenOpen || stopInsideTokens) && paragraph >= maxParagraphs;
+            }
+        }
+
+        private void addPiece(Collection<String> style, int length) {
+            if (length <= 0) {
+                return;
+            }
+
+            spansBuilder.add(style, length);
+            empty = false;
+            position += length;
+        }
+
+        boolean isConverged() {
+            return converged;
+        }
+
+        boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * @return the number of paragraphs whose styles are fully computed
+         */
+        int getParagraphCount() {
+            return stopped ? paragraph : text.getParagraphCount();
+        }
+
+        /**
+         * @param paragraph a paragraph following the first one, relative to it
+         */
+        short getParagraphState(int paragraph) {
+            return paragraphStates[paragraph - 1];
+        }
+
+        /**
+         * @return the states of the paragraphs following the first one, as far as the pass went
+         */
+        short[] getParagraphStates() {
+            return Arrays.copyOf(paragraphStates, paragraph);
+        }
+
+        StyleSpans<Collection<String>> create() {
+            if (styleSpans == null && !empty) {
+                styleSpans = spansBuilder.create();
             }
-            spansBuilder.add(Collections.emptyList(), text.length() - latestMatchEndPosition);
-            return spansBuilder.create();
+            return styleSpans;
         }
     }
 }
@@ -0,0 +1,239 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable tokenizer compiled from a list of styles.
+ * <p>
+ * Each pattern is compiled on its own, and a dispatch table tells which patterns
+ * may match starting with a given character: at each position, only such patterns
+ * are attempted, in registration (FIFO) order, and the first one matching wins -
+ * so the winning style is known as soon as it matches.
+ * <p>
+ * Rules made of word tokens only are not matched with their pattern: the word at the
+ * position is looked up in a TokenSet, whatever the number of tokens.
+ */
+final class SyntaxLexer {
+
+    private static final int DISPATCH_TABLE_SIZE = 128;
+
+    /**
+     * Text preceding the probed character, so that patterns starting with
+     * a word boundary are probed both after a word character and after none
+     */
+    private static final String[] PROBE_CONTEXTS = {"", "a"};
+
+    private static final int[] NO_RULES = new int[0];
+
+    private final Style[] styles;
+    private final Pattern[] patterns;
+    private final TokenSet[] tokenSets;
+    private final int[][] dispatchTable = new int[DISPATCH_TABLE_SIZE][];
+    private final int[] allRules;
+
+    /**
+     * @param styles the styles, in priority order
+     * @throws java.util.regex.PatternSyntaxException if a pattern is invalid
+     */
+    SyntaxLexer(List<Style> styles) {
+        this.styles = styles.toArray(new Style[0]);
+        this.patterns = new Pattern[this.styles.length];
+        this.tokenSets = new TokenSet[this.styles.length];
+        this.allRules = new int[this.styles.length];
+
+        for (int rule = 0; rule < this.styles.length; rule++) {
+            List<String> tokens = this.styles[rule].getTokens();
+            if (!tokens.isEmpty() && tokens.stream().allMatch(TokenSet::isWord)) {
+                tokenSets[rule] = new TokenSet(tokens.toArray(new String[0]));
+            } else {
+                patterns[rule] = Pattern.compile(this.styles[rule].getPattern());
+            }
+            allRules[rule] = rule;
+        }
+
+        for (int character = 0; character < DISPATCH_TABLE_SIZE; character++) {
+            List<Integer> candidates = new ArrayList<>();
+
+            for (int rule = 0; rule < patterns.length; rule++) {
+                boolean candidate = tokenSets[rule] != null
+                        ? tokenSets[rule].mayStartWith((char) character)
+                        : mayStartWith(patterns[rule], (char) character);
+                if (candidate) {
+                    candidates.add(rule);
+                }
+            }
+
+            dispatchTable[character] = candidates.isEmpty()
+                    ? NO_RULES
+                    : candidates.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public boolean isEmpty() {
+        return styles.length == 0;
+    }
+
+    public Scanner scanner(CharSequence text) {
+        return new Scanner(text);
+    }
+
+    /**
+     * @return the indexes of the rules worth attempting at a character, in priority order
+     */
+    int[] getCandidates(char character) {
+        return character < DISPATCH_TABLE_SIZE ? dispatchTable[character] : allRules;
+    }
+
+    /**
+     * Tells whether a pattern might match text starting with the given character.
+     * <p>
+     * The answer may be a false positive, but never a false negative: the character
+     * is a candidate when the pattern matches it, or when the matcher needed more input
+     * to decide; lookbehinds depend on arbitrary preceding text, so they accept anything.
+     */
+    private static boolean mayStartWith(Pattern pattern, char character) {
+        String patternString = pattern.pattern();
+        if (patternString.contains("(?<=") || patternString.contains("(?<!") || patternString.contains("\\G")) {
+            return true;
+        }
+
+        for (String context : PROBE_CONTEXTS) {
+            Matcher matcher = pattern.matcher(context + character);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            matcher.region(context.length(), context.length() + 1);
+
+            if (matcher.lookingAt() || matcher.hitEnd()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Scans a text for tokens; it is not thread-safe, but the lexer can be
+     * shared by any number of scanners.
+     */
+    final class Scanner {
+        private final CharSequence text;
+        private final Matcher[] matchers = new Matcher[patterns.length];
+
+        private int position = 0;
+        private int tokenStart = -1;
+        private int tokenEnd = -1;
+        private int tokenRule = -1;
+        private Style tokenStyle;
+        private boolean hitEnd = false;
+
+        private Scanner(CharSequence text) {
+            this.text = text;
+        }
+
+        /**
+         * Looks for the next non-empty token.
+         *
+         * @return false if there are no more tokens
+         */
+        public boolean next() {
+            int length = text.length();
+            hitEnd = false;
+
+            while (position < length) {
+                for (int rule : getCandidates(text.charAt(position))) {
+                    int end = tokenSets[rule] != null ? matchTokens(tokenSets[rule], length) : matchPattern(rule, length);
+
+                    if (end >= 0) {
+                        // An empty match still wins over the following rules, but styles nothing
+                        if (end > position) {
+                            tokenStart = position;
+                            tokenEnd = end;
+                            tokenRule = rule;
+                            tokenStyle = styles[rule];
+                            position = tokenEnd;
+                            return true;
+                        }
+                        break;
+                    }
+                }
+
+                position++;
+            }
+
+            tokenStart = tokenEnd = tokenRule = -1;
+            tokenStyle = null;
+            return false;
+        }
+
+        /**
+         * @return the end of the match at the current position, or -1 if none
+         */
+        private int matchPattern(int rule, int length) {
+            Matcher matcher = getMatcher(rule);
+            matcher.region(position, length);
+
+            boolean matched = matcher.lookingAt();
+            hitEnd |= matcher.hitEnd();
+
+            return matched ? matcher.end() : -1;
+        }
+
+        /**
+         * Hits the end as the pattern of the tokens would: when the word reaches the end
+         * of the text and might still be completed into a token
+         */
+        private int matchTokens(TokenSet tokenSet, int length) {
+            int wordEnd = TokenSet.findWordEnd(text, position);
+            if (wordEnd < 0) {
+                return -1;
+            }
+
+            if (wordEnd == length && tokenSet.containsPrefix(text, position, wordEnd)) {
+                hitEnd = true;
+            }
+
+            return tokenSet.contains(text, position, wordEnd) ? wordEnd : -1;
+        }
+
+        public int getStart() {
+            return tokenStart;
+        }
+
+        public int getEnd() {
+            return tokenEnd;
+        }
+
+        /**
+         * @return the index of the rule matching the token, in priority order
+         */
+        public int getRule() {
+            return tokenRule;
+        }
+
+        public Style getStyle() {
+            return tokenStyle;
+        }
+
+        /**
+         * @return true if the latest call to next() needed to look at the end of the text,
+         * so that appending text might change its result
+         */
+        public boolean hitEnd() {
+            return hitEnd;
+        }
+
+        private Matcher getMatcher(int rule) {
+            Matcher matcher = matchers[rule];
+            if (matcher == null) {
+                matcher = patterns[rule].matcher(text);
+                matcher.useTransparentBounds(true);
+                matcher.useAnchoringBounds(false);
+                matchers[rule] = matcher;
+            }
+            return matcher;
+        }
+    }
+}
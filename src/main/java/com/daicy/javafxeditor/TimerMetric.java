@@ -0,0 +1,178 @@
+package com.daicy.javafxeditor;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations of a recurring operation: count, total, maximum and a histogram for percentiles.
+ * <p>
+ * Recording neither allocates nor locks - just a few atomic updates - so that metrics can stay
+ * enabled on hot paths, from any thread. The histogram has 8 linear buckets per power of two
+ * of microseconds, so percentiles are reported within 12.5% of the actual durations.
+ */
+public final class TimerMetric {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Up to 2^40 microseconds, about 12 days; longer durations fall into the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        buckets.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    static int getBucket(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * @return the largest duration falling into the bucket, in microseconds
+     */
+    static long getBucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the duration below which the given fraction of the recorded durations fall, in nanoseconds
+     */
+    public long getPercentileNanos(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                // Not beyond the actual maximum, which is exact
+                return Math.min(TimeUnit.MICROSECONDS.toNanos(getBucketUpperBound(i) + 1), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the current values, as reported to JMX clients
+     */
+    public Statistics getStatistics() {
+        long currentCount = count.get();
+        long currentTotalNanos = totalNanos.get();
+
+        return new Statistics(
+                currentCount,
+                toMillis(currentTotalNanos),
+                currentCount > 0 ? toMillis(currentTotalNanos) / currentCount : 0,
+                toMillis(getPercentileNanos(0.5)),
+                toMillis(getPercentileNanos(0.99)),
+                toMillis(maxNanos.get())
+        );
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * The values of a timer at some point, in milliseconds
+     */
+    public static final class Statistics {
+
+        private final long count;
+        private final double totalMillis;
+        private final double meanMillis;
+        private final double medianMillis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        @ConstructorProperties({"count", "totalMillis", "meanMillis", "medianMillis", "p99Millis", "maxMillis"})
+        public Statistics(long count, double totalMillis, double meanMillis, double medianMillis, double p99Millis, double maxMillis) {
+            this.count = count;
+            this.totalMillis = totalMillis;
+            this.meanMillis = meanMillis;
+            this.medianMillis = medianMillis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getTotalMillis() {
+            return totalMillis;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getMedianMillis() {
+            return medianMillis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            if (count == 0) {
+                return "none";
+            }
+            return String.format("%d, mean %.1f ms, median %.1f ms, p99 %.1f ms, max %.1f ms",
+                    count, meanMillis, medianMillis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.daicy.javafxeditor;
+
+import java.util.Arrays;
+
+/**
+ * Set of word tokens - keywords, builtins - looked up directly in the text, without allocating:
+ * the lexer finds the word at a position once, then hashes it, so the cost per word depends
+ * on its length only, not on the number of tokens.
+ * <p>
+ * Words follow the definition of \b in regular expressions, so that a token rule matches
+ * exactly what the alternation of its tokens between \b would.
+ */
+final class TokenSet {
+
+    private final String[] table;
+    private final String[] sortedTokens;
+    private final boolean[] asciiStarts = new boolean[128];
+    private final int maxLength;
+
+    /**
+     * @param tokens word tokens only, as told by isWord()
+     */
+    TokenSet(String... tokens) {
+        sortedTokens = Arrays.stream(tokens).distinct().sorted().toArray(String[]::new);
+
+        // At most half full, so that probe sequences stay short
+        table = new String[Integer.highestOneBit(Math.max(1, sortedTokens.length)) * 4];
+        int longest = 0;
+
+        for (String token : sortedTokens) {
+            int slot = getSlot(token.hashCode());
+            while (table[slot] != null) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = token;
+
+            if (token.charAt(0) < asciiStarts.length) {
+                asciiStarts[token.charAt(0)] = true;
+            }
+            longest = Math.max(longest, token.length());
+        }
+
+        maxLength = longest;
+    }
+
+    /**
+     * @return true if the token is made of word characters only, so that it can belong to a set
+     */
+    static boolean isWord(String token) {
+        return !token.isEmpty() && token.codePoints().allMatch(codePoint -> codePoint == '_' || Character.isLetterOrDigit(codePoint));
+    }
+
+    /**
+     * @return false if no token starts with the ASCII character
+     */
+    boolean mayStartWith(char character) {
+        return character >= asciiStarts.length || asciiStarts[character];
+    }
+
+    /**
+     * @return the end of the word starting at the position, or -1 if no word starts there -
+     * the position being within a word, or not before a word character
+     */
+    static int findWordEnd(CharSequence text, int position) {
+        int length = text.length();
+        if (position >= length || isWordBefore(text, position)) {
+            return -1;
+        }
+
+        int end = position;
+        boolean afterLetterOrDigit = false;
+        while (end < length) {
+            int codePoint = Character.codePointAt(text, end);
+            if (Character.getType(codePoint) == Character.NON_SPACING_MARK) {
+                if (!afterLetterOrDigit) {
+                    break;
+                }
+            } else if (isWordCharacter(codePoint)) {
+                afterLetterOrDigit = codePoint != '_';
+            } else {
+                break;
+            }
+            end += Character.charCount(codePoint);
+        }
+
+        return end > position ? end : -1;
+    }
+
+    /**
+     * As \b does, non-spacing marks belong to the word of their base character, if a letter or digit
+     */
+    private static boolean isWordBefore(CharSequence text, int position) {
+        int index = position;
+        while (index > 0) {
+            int codePoint = Character.codePointBefore(text, index);
+            if (Character.getType(codePoint) != Character.NON_SPACING_MARK) {
+                return index == position ? isWordCharacter(codePoint) : Character.isLetterOrDigit(codePoint);
+            }
+            index -= Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    private static boolean isWordCharacter(int codePoint) {
+        return codePoint == '_' || Character.isLetterOrDigit(codePoint);
+    }
+
+    boolean contains(CharSequence text, int start, int end) {
+        if (end - start > maxLength) {
+            return false;
+        }
+
+        // Same hash as String.hashCode()
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+
+        for (int slot = getSlot(hash); table[slot] != null; slot = (slot + 1) & (table.length - 1)) {
+            if (regionEquals(table[slot], text, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only needed for words reaching the end of the text, so a binary search is enough
+     *
+     * @return true if some token starts with the text between start and end
+     */
+    boolean containsPrefix(CharSequence text, int start, int end) {
+        int low = 0;
+        int high = sortedTokens.length - 1;
+
+        // The first token not preceding the text, which starts with it if any token does
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compare(sortedTokens[middle], text, start, end) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return low < sortedTokens.length && startsWith(sortedTokens[low], text, start, end);
+    }
+
+    private int getSlot(int hash) {
+        return (hash ^ (hash >>> 16)) & (table.length - 1);
+    }
+
+    private static boolean regionEquals(String token, CharSequence text, int start, int end) {
+        return token.length() == end - start && startsWith(token, text, start, end);
+    }
+
+    private static boolean startsWith(String token, CharSequence text, int start, int end) {
+        if (token.length() < end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (token.charAt(i - start) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compare(String token, CharSequence text, int start, int end) {
+        int length = Math.min(token.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            int difference = token.charAt(i) - text.charAt(start + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return token.length() - (end - start);
+    }
+}
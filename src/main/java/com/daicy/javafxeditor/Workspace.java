@@ -1,14 +1,18 @@
 package com.daicy.javafxeditor;
 
 import java.io.File;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 
+import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 
-import javafx.event.EventHandler;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.stage.FileChooser;
@@ -19,7 +23,7 @@ import javafx.stage.WindowEvent;
 public abstract class Workspace {
 
     private final ObjectProperty<Optional<File>> documentFileOptional = new SimpleObjectProperty<>(Optional.empty());
-    private final SimpleBooleanProperty modified = new SimpleBooleanProperty(false);
+    private final ReadOnlyBooleanWrapper modified = new ReadOnlyBooleanWrapper(false);
     private final Stage stage;
     private final FileChooser documentFileChooser;
 
@@ -28,15 +32,18 @@ public abstract class Workspace {
         this.documentFileChooser = documentFileChooser;
     }
 
+    /**
+     * @return whether the document differs from the latest saved revision; maintained by subclasses
+     */
     public ReadOnlyBooleanProperty modifiedProperty() {
-        return modified;
+        return modified.getReadOnlyProperty();
     }
 
     public boolean isModified() {
         return modified.get();
     }
 
-    public void setModified(boolean value) {
+    protected void setModified(boolean value) {
         modified.set(value);
     }
 
@@ -52,17 +59,6 @@ public abstract class Workspace {
         documentFileOptional.set(value);
     }
 
-    public void bindEvents() {
-        stage.addEventHandler(WindowEvent.WINDOW_CLOSE_REQUEST, new EventHandler<WindowEvent>() {
-            @Override
-            public void handle(WindowEvent event) {
-                if (!canLeaveDocument()) {
-                    event.consume();
-                }
-            }
-        });
-    }
-
     public boolean newDocument() {
         try {
             if (!canLeaveDocument()) {
@@ -74,7 +70,7 @@ public abstract class Workspace {
             }
 
             setDocumentFileOptional(Optional.empty());
-            setModified(false);
+            getCurrentRevision().markSaved();
 
             return true;
         } catch (Exception ex) {
@@ -97,12 +93,24 @@ public abstract class Workspace {
                 return false;
             }
 
-            if (!doOpen(selectedFile)) {
+            return openDocument(selectedFile);
+        } catch (Exception ex) {
+            showException(ex);
+            return false;
+        }
+    }
+
+    /**
+     * Opens the given file in place of the document, without asking to save it
+     */
+    public boolean openDocument(File file) {
+        try {
+            if (!doOpen(file)) {
                 return false;
             }
 
-            setDocumentFileOptional(Optional.of(selectedFile));
-            setModified(false);
+            setDocumentFileOptional(Optional.of(file));
+            getCurrentRevision().markSaved();
 
             return true;
         } catch (Exception ex) {
@@ -114,54 +122,137 @@ public abstract class Workspace {
     protected abstract boolean doOpen(File sourceFile);
 
     public boolean saveDocument() {
+        return saveDocument(false);
+    }
+
+    /**
+     * Saves the document in the background, asking for its file if it has none - for instance, before running it
+     *
+     * @return completed on the FX thread once the file is written; with false if the document was not saved,
+     * any error having been shown
+     */
+    public CompletableFuture<Boolean> saveDocumentAsync() {
+        File targetFile = getDocumentFileOptional().orElseGet(() -> documentFileChooser.showSaveDialog(stage));
+
+        if (targetFile == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return saveInBackground(targetFile);
+    }
+
+    private boolean saveDocument(boolean waitForCompletion) {
+        Optional<File> fileOptional = getDocumentFileOptional();
+        if (fileOptional.isEmpty()) {
+            return saveAsDocument(waitForCompletion);
+        } else {
+            return save(fileOptional.get(), waitForCompletion);
+        }
+    }
+
+    public boolean saveAsDocument() {
+        return saveAsDocument(false);
+    }
+
+    private boolean saveAsDocument(boolean waitForCompletion) {
+        File selectedFile = documentFileChooser.showSaveDialog(stage);
+
+        if (selectedFile == null) {
+            return false;
+        }
+
+        return save(selectedFile, waitForCompletion);
+    }
+
+    /**
+     * Saves the document, usually in the background.
+     *
+     * @param waitForCompletion true to block until the file is written, for instance before leaving the document
+     * @return true if the document was saved or is being saved
+     */
+    private boolean save(File targetFile, boolean waitForCompletion) {
+        if (!waitForCompletion) {
+            // Only a save failing at once is already completed
+            CompletableFuture<Boolean> saved = saveInBackground(targetFile);
+            return !saved.isDone() || saved.join();
+        }
+
         try {
-            Optional<File> fileOptional = getDocumentFileOptional();
-            if (fileOptional.isEmpty()) {
-                return saveAsDocument();
-            } else {
-                File file = fileOptional.get();
-                boolean saveResult = doSave(file);
-                if (saveResult) {
-                    setModified(false);
-                }
-                return saveResult;
-            }
+            documentSaved(targetFile, doSave(targetFile).get());
+            return true;
+        } catch (ExecutionException ex) {
+            showException(unwrap(ex));
+            return false;
         } catch (Exception ex) {
             showException(ex);
             return false;
         }
     }
 
-    public boolean saveAsDocument() {
+    /**
+     * @return completed on the FX thread once the file is written; with false if saving failed, the error being shown
+     */
+    private CompletableFuture<Boolean> saveInBackground(File targetFile) {
+        CompletableFuture<Revision> savedRevision;
         try {
-            File selectedFile = documentFileChooser.showSaveDialog(stage);
+            savedRevision = doSave(targetFile);
+        } catch (Exception ex) {
+            showException(ex);
+            return CompletableFuture.completedFuture(false);
+        }
 
-            if (selectedFile == null) {
-                return false;
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        savedRevision.whenComplete((revision, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                showException(unwrap(ex));
+                result.complete(false);
+            } else {
+                documentSaved(targetFile, revision);
+                result.complete(true);
             }
+        }));
 
-            if (!doSave(selectedFile)) {
-                return false;
-            }
+        return result;
+    }
 
-            setDocumentFileOptional(Optional.of(selectedFile));
-            setModified(false);
+    /**
+     * The document remains modified if it was edited while being saved
+     */
+    private void documentSaved(File targetFile, Revision savedRevision) {
+        setDocumentFileOptional(Optional.of(targetFile));
+        savedRevision.markSaved();
+    }
 
-            return true;
-        } catch (Exception ex) {
-            showException(ex);
-            return false;
+    private static Throwable unwrap(Throwable ex) {
+        if ((ex instanceof ExecutionException || ex instanceof CompletionException) && ex.getCause() != null) {
+            return ex.getCause();
         }
+        return ex;
     }
 
-    protected abstract boolean doSave(File targetFile);
+    /**
+     * Starts saving a snapshot of the document; the file must only be replaced once entirely written.
+     *
+     * @return the revision of the saved snapshot, completed once the file is written
+     */
+    protected abstract CompletableFuture<Revision> doSave(File targetFile);
+
+    /**
+     * @return the revision of the current content of the document
+     */
+    protected abstract Revision getCurrentRevision();
 
     public void closeStage() {
         WindowEvent closeEvent = new WindowEvent(stage, WindowEvent.WINDOW_CLOSE_REQUEST);
         stage.fireEvent(closeEvent);
     }
 
-    private boolean canLeaveDocument() {
+    /**
+     * Asks whether to save the document, if modified, before it is left - for instance, closed
+     *
+     * @return false if the document should not be left
+     */
+    public boolean canLeaveDocument() {
         if (!isModified()) {
             return true;
         }
@@ -178,7 +269,7 @@ public abstract class Workspace {
         ButtonType result = alert.showAndWait().orElse(cancelButton);
 
         if (result.equals(yesButton)) {
-            return saveDocument();
+            return saveDocument(true);
         } else if (result.equals(noButton)) {
             return true;
         } else {
@@ -186,7 +277,44 @@ public abstract class Workspace {
         }
     }
 
-    private void showException(Exception ex) {
+    /**
+     * Offers to recover the documents left with unsaved changes by a session that did not end normally;
+     * closing the dialog keeps them, so that no work is lost by mistake.
+     *
+     * @param documentNames the names of the documents
+     * @return true to recover the documents, false to discard their changes
+     */
+    public static boolean offerRecovery(List<String> documentNames) {
+        Alert alert = new Alert(
+                Alert.AlertType.CONFIRMATION,
+                "The previous session ended with unsaved changes to:\n\n"
+                        + String.join("\n", documentNames)
+                        + "\n\nDo you wish to recover them?"
+        );
+        alert.setTitle("Unsaved Changes");
+
+        ButtonType recoverButton = new ButtonType("Recover");
+        ButtonType discardButton = new ButtonType("Discard");
+
+        alert.getButtonTypes().setAll(recoverButton, discardButton);
+
+        return !alert.showAndWait().orElse(recoverButton).equals(discardButton);
+    }
+
+    /**
+     * A state of the document content, as of a given edit
+     */
+    protected interface Revision {
+        /**
+         * Records this revision as the saved one: the document is unmodified whenever
+         * its content returns to it - for instance, when undoing back to it.
+         * <p>
+         * Once later edits are saved, or the revision is lost from the history, it is ignored.
+         */
+        void markSaved();
+    }
+
+    protected void showException(Throwable ex) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle("Error");
         alert.setHeaderText(null);
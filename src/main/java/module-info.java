@@ -4,6 +4,8 @@ module com.daicy.javafxidea {
 
     requires org.kordamp.bootstrapfx.core;
     requires java.desktop;
+    requires java.management;
+    requires jdk.jfr;
     requires org.fxmisc.richtext;
     requires org.fxmisc.undo;
     requires reactfx;
@@ -0,0 +1,103 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+
+/**
+ * Synthetic Java sources and syntax rules shared by the benchmarks and the performance tests
+ */
+final class BenchmarkDocuments {
+
+    private static final String[] JAVA_KEYWORDS = {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while"
+    };
+
+    private static final String SOURCE_TEMPLATE = String.join("\n",
+            "/*",
+            " * Synthetic source %1$d, with a multi-line comment",
+            " */",
+            "public class Generated%1$d extends Base implements Runnable {",
+            "    private static final String NAME = \"generated %1$d\";",
+            "    private final int[] values = new int[%1$d];",
+            "",
+            "    @Override",
+            "    public void run() {",
+            "        for (int i = 0; i < values.length; i++) {",
+            "            if (values[i] %% 2 == 0) {",
+            "                values[i] += i * 31; // even values",
+            "            } else {",
+            "                throw new IllegalStateException(NAME + \" at \" + i);",
+            "            }",
+            "        }",
+            "    }",
+            "}",
+            "",
+            "");
+
+    private BenchmarkDocuments() {
+    }
+
+    /**
+     * @param size a size such as "10KB", "1MB" or "50MB"
+     * @return the number of characters
+     */
+    static int parseSize(String size) {
+        if (size.endsWith("MB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        }
+        if (size.endsWith("KB")) {
+            return Integer.parseInt(size.substring(0, size.length() - 2)) * 1024;
+        }
+        return Integer.parseInt(size);
+    }
+
+    /**
+     * @return Java-like source code of exactly the given length
+     */
+    static String createJavaSource(int length) {
+        StringBuilder source = new StringBuilder(length + SOURCE_TEMPLATE.length() * 2);
+        for (int i = 0; source.length() < length; i++) {
+            source.append(String.format(SOURCE_TEMPLATE, i));
+        }
+        source.setLength(length);
+        return source.toString();
+    }
+
+    static ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, Collections.<String>emptyList(), Collections.<String>emptyList(), SegmentOps.styledTextOps());
+    }
+
+    /**
+     * @param keywordCount the number of tokens styled as keywords: the Java keywords,
+     *                     followed by made-up identifiers as needed
+     */
+    static String[] createKeywords(int keywordCount) {
+        String[] keywords = Arrays.copyOf(JAVA_KEYWORDS, keywordCount);
+        for (int i = JAVA_KEYWORDS.length; i < keywordCount; i++) {
+            keywords[i] = "Identifier" + i;
+        }
+        return keywords;
+    }
+
+    /**
+     * @return rules registered as a Java editor would, through addPattern() and addTokens()
+     */
+    static List<Style> createJavaStyles(int keywordCount) {
+        List<Style> styles = new ArrayList<>();
+        styles.add(new Style("comment", "//[^\\n]*|/\\*(.|\\R)*?\\*/"));
+        styles.add(new Style("string", "\"([^\"\\\\]|\\\\.)*\""));
+        styles.add(Style.ofTokens("keyword", createKeywords(keywordCount)));
+        styles.add(new Style("number", "\\b\\d+\\b"));
+        return styles;
+    }
+}
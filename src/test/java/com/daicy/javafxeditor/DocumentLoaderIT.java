@@ -0,0 +1,64 @@
+package com.daicy.javafxeditor;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+import org.fxmisc.richtext.CodeArea;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loading a file into an editor, headless on Monocle.
+ * <p>
+ * Run with mvn -Ptyping-latency verify.
+ */
+public class DocumentLoaderIT {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void startToolkit() throws Exception {
+        HeadlessToolkit.start();
+    }
+
+    @Test
+    public void call_SeveralBatches_KeepsUndoHistoryEmpty() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3_500_000) {
+            text.append("public static final int VALUE_").append(text.length()).append(" = 0;\n");
+        }
+        Path file = directory.resolve("Large.java");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        CodeArea editor = HeadlessToolkit.callOnFxThread(CodeArea::new, TIMEOUT_SECONDS);
+        AtomicInteger batchCount = new AtomicInteger();
+        AtomicInteger batchesWithHistory = new AtomicInteger();
+        // The check runs once the batch being appended has been handled, before the next one is read
+        editor.lengthProperty().addListener((observable, oldValue, newValue) -> {
+            batchCount.incrementAndGet();
+            Platform.runLater(() -> {
+                if (editor.isUndoAvailable()) {
+                    batchesWithHistory.incrementAndGet();
+                }
+            });
+        });
+
+        DocumentLoader loader = new DocumentLoader(file, StandardCharsets.UTF_8, editor);
+        loader.run();
+        loader.get();
+
+        assertTrue(HeadlessToolkit.callOnFxThread(() -> editor.getText().contentEquals(text), TIMEOUT_SECONDS));
+        assertTrue(batchCount.get() > 1);
+        assertEquals(0, batchesWithHistory.get());
+        assertFalse(HeadlessToolkit.callOnFxThread(editor::isUndoAvailable, TIMEOUT_SECONDS));
+    }
+}
@@ -0,0 +1,100 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class DocumentSaverTest {
+
+    @TempDir
+    Path directory;
+
+    private static StyledDocument<String, String, String> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, "", "", SegmentOps.styledTextOps());
+    }
+
+    @Test
+    public void save_MultipleParagraphs_WritesTheirText() throws IOException {
+        Path target = directory.resolve("Test.java");
+        String text = "class Test {\n    // àèìòù\n}\n";
+
+        DocumentSaver.save(createDocument(text), target, StandardCharsets.UTF_8);
+
+        assertEquals(text, Files.readString(target, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void save_ExistingFile_ReplacesItWithoutLeftovers() throws IOException {
+        Path target = directory.resolve("Test.java");
+        Files.writeString(target, "a much longer previous content");
+
+        DocumentSaver.save(createDocument("short"), target, StandardCharsets.UTF_8);
+
+        assertEquals("short", Files.readString(target));
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void save_ParagraphLargerThanBuffer_IsWrittenEntirely() throws IOException {
+        Path target = directory.resolve("Large.txt");
+        String text = "x".repeat(200_000) + "\n" + "y".repeat(100_000);
+
+        DocumentSaver.save(createDocument(text), target, StandardCharsets.UTF_8);
+
+        assertEquals(text, Files.readString(target));
+    }
+
+    @Test
+    public void save_NewFile_GetsTheDefaultPermissions() throws IOException {
+        assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+        Path createdFile = Files.createFile(directory.resolve("Created.java"));
+        Path target = directory.resolve("Test.java");
+
+        DocumentSaver.save(createDocument("text"), target, StandardCharsets.UTF_8);
+
+        assertEquals(Files.getPosixFilePermissions(createdFile), Files.getPosixFilePermissions(target));
+    }
+
+    @Test
+    public void save_ExistingFile_KeepsItsPermissions() throws IOException {
+        assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+        Path target = directory.resolve("run.sh");
+        Files.writeString(target, "previous");
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rwxr-x---"));
+
+        DocumentSaver.save(createDocument("text"), target, StandardCharsets.UTF_8);
+
+        assertEquals(PosixFilePermissions.fromString("rwxr-x---"), Files.getPosixFilePermissions(target));
+    }
+
+    @Test
+    public void save_SymbolicLink_ReplacesTheLinkedFile() throws IOException {
+        Path linkedFile = Files.writeString(directory.resolve("Linked.java"), "previous");
+        Path link;
+        try {
+            link = Files.createSymbolicLink(directory.resolve("Link.java"), linkedFile);
+        } catch (UnsupportedOperationException | IOException e) {
+            assumeTrue(false, "Symbolic links are not supported");
+            return;
+        }
+
+        DocumentSaver.save(createDocument("text"), link, StandardCharsets.UTF_8);
+
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("text", Files.readString(linkedFile));
+    }
+}
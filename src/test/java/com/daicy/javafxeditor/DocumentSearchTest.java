@@ -0,0 +1,69 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentSearchTest {
+
+    private static StyledDocument<String, String, String> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, "", "", SegmentOps.styledTextOps());
+    }
+
+    private static List<Integer> findAll(String text, Pattern pattern, int batchSize) {
+        List<Integer> offsets = new ArrayList<>();
+        DocumentSearch.findAll(createDocument(text), pattern, batchSize, batch -> {
+            assertTrue(batch.length <= batchSize * 2);
+            for (int offset : batch) {
+                offsets.add(offset);
+            }
+        }, () -> false);
+        return offsets;
+    }
+
+    @Test
+    public void findAll_LiteralQuery_IgnoresRegexSyntaxAndCase() {
+        Pattern pattern = DocumentSearch.compile("a.b", false, false);
+
+        assertEquals(List.of(0, 3, 9, 12), findAll("a.baxb\nxxA.B", pattern, 1));
+    }
+
+    @Test
+    public void findAll_RegexAcrossParagraphs_ReportsAbsoluteOffsets() {
+        Pattern pattern = DocumentSearch.compile("^b+$", true, true);
+
+        assertEquals(List.of(2, 4, 7, 8), findAll("a\nbb\na\nb\nB", pattern, 10));
+    }
+
+    @Test
+    public void replaceAll_GroupReferences_AreExpanded() {
+        Pattern pattern = DocumentSearch.compile("(\\w+)=(\\w+)", true, true);
+
+        DocumentSearch.Replacement replacement = DocumentSearch.replaceAll(
+                createDocument("x a=1;\nbb=22 y"), pattern, "$2=$1", () -> false);
+
+        assertEquals(2, replacement.getCount());
+        assertEquals(2, replacement.getStart());
+        assertEquals(12, replacement.getEnd());
+        assertEquals("1=a;\n22=bb", replacement.getText());
+    }
+
+    @Test
+    public void replaceAll_Cancelled_ReturnsNull() {
+        Pattern pattern = DocumentSearch.compile("a", false, false);
+        int[] checks = {0};
+
+        DocumentSearch.Replacement replacement = DocumentSearch.replaceAll(
+                createDocument("a a a a"), pattern, "b", () -> ++checks[0] > 2);
+
+        assertNull(replacement);
+        assertEquals(3, checks[0]);
+    }
+}
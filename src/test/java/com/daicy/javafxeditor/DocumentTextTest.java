@@ -0,0 +1,62 @@
+package com.daicy.javafxeditor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentTextTest {
+
+    private static ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, Collections.emptyList(), Collections.emptyList(), SegmentOps.styledTextOps());
+    }
+
+    @Test
+    public void charAt_FromFirstParagraph_MatchesDocumentText() {
+        String text = "alpha\n\nbeta gamma\ndelta\n";
+        DocumentText documentText = new DocumentText(createDocument(text), 0);
+
+        assertEquals(text.length(), documentText.length());
+        assertEquals(text, documentText.toString());
+    }
+
+    @Test
+    public void charAt_FromInnerParagraph_StartsAtParagraph() {
+        DocumentText documentText = new DocumentText(createDocument("alpha\n\nbeta gamma\ndelta"), 2);
+
+        assertEquals("beta gamma\ndelta", documentText.toString());
+        assertEquals(2, documentText.getParagraphCount());
+    }
+
+    @Test
+    public void getParagraphAt_AnyOffset_ReturnsContainingParagraph() {
+        DocumentText documentText = new DocumentText(createDocument("ab\n\ncde\nf"), 0);
+
+        assertEquals(0, documentText.getParagraphAt(0));
+        assertEquals(0, documentText.getParagraphAt(2));
+        assertEquals(1, documentText.getParagraphAt(3));
+        assertEquals(2, documentText.getParagraphAt(4));
+        assertEquals(3, documentText.getParagraphAt(8));
+        assertEquals(0, documentText.getParagraphAt(1));
+
+        assertEquals(4, documentText.getParagraphStart(2));
+        assertEquals(3, documentText.getParagraphLength(2));
+    }
+
+    @Test
+    public void matcher_MultiLinePattern_MatchesAcrossParagraphs() {
+        DocumentText documentText = new DocumentText(createDocument("int a;\n/* one\ntwo */ b"), 0);
+
+        Matcher matcher = Pattern.compile("/\\*[\\s\\S]*?\\*/").matcher(documentText);
+
+        assertTrue(matcher.find());
+        assertEquals(7, matcher.start());
+        assertEquals(20, matcher.end());
+    }
+}
@@ -0,0 +1,145 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EditJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private EditJournal createJournal() {
+        return EditJournal.create(directory.resolve("recovery"));
+    }
+
+    @Test
+    public void recover_EditsOfNewDocument_ReplaysThem() throws IOException {
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "class Test {}");
+        journal.append(12, 0, "\n    // àèìòù\n");
+        journal.append(6, 4, "Demo");
+        journal.flush();
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getPath());
+
+        assertEquals("class Demo {\n    // àèìòù\n}", recovery.getText());
+        assertTrue(recovery.getFileOptional().isEmpty());
+    }
+
+    @Test
+    public void findJournals_JournalInUse_SkipsIt() throws IOException {
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "in use");
+        journal.flush();
+
+        Path abandoned = directory.resolve("recovery").resolve("abandoned.journal");
+        Files.copy(journal.getPath(), abandoned);
+
+        assertEquals(List.of(abandoned), EditJournal.findJournals(directory.resolve("recovery")));
+    }
+
+    @Test
+    public void recover_EditsOfSavedFile_ReplaysThemOverTheFile() throws IOException {
+        File documentFile = directory.resolve("Test.java").toFile();
+        Files.writeString(documentFile.toPath(), "saved text");
+
+        EditJournal journal = createJournal();
+        journal.reset(documentFile);
+        journal.append(0, 5, "edited");
+        journal.flush();
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getPath());
+
+        assertEquals("edited text", recovery.getText());
+        assertEquals(documentFile.getAbsoluteFile(), recovery.getFileOptional().orElseThrow());
+    }
+
+    @Test
+    public void recover_FileChangedAfterTheEdits_Fails() throws IOException {
+        File documentFile = directory.resolve("Test.java").toFile();
+        Files.writeString(documentFile.toPath(), "saved text");
+
+        EditJournal journal = createJournal();
+        journal.reset(documentFile);
+        journal.append(0, 0, "x");
+        journal.flush();
+        Files.writeString(documentFile.toPath(), "changed elsewhere");
+
+        assertThrows(IOException.class, () -> EditJournal.recover(journal.getPath()));
+    }
+
+    @Test
+    public void recover_PartiallyWrittenCommit_IgnoresIt() throws IOException {
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "committed");
+        journal.flush();
+        long committedSize = Files.size(journal.getPath());
+        Files.write(journal.getPath(), new byte[]{'E', 9, 0, 5, 'l', 'o'}, StandardOpenOption.APPEND);
+
+        EditJournal.Recovery recovery = EditJournal.recover(journal.getPath());
+
+        assertEquals("committed", recovery.getText());
+        assertEquals(committedSize, recovery.getValidLength());
+    }
+
+    @Test
+    public void compact_ThenEdits_RecoversFromTheSnapshot() throws IOException {
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "discarded by the snapshot");
+        journal.compact(null, ReadOnlyStyledDocument.fromString("first\nsecond", "", "", SegmentOps.styledTextOps()));
+        journal.append(5, 0, " line");
+        journal.flush();
+
+        assertEquals("first line\nsecond", EditJournal.recover(journal.getPath()).getText());
+    }
+
+    @Test
+    public void reset_ToSavedFile_DeletesTheJournal() throws IOException {
+        File documentFile = directory.resolve("Test.java").toFile();
+        Files.writeString(documentFile.toPath(), "saved text");
+
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "saved text");
+        journal.flush();
+        assertTrue(Files.exists(journal.getPath()));
+
+        journal.reset(documentFile);
+        journal.flush();
+
+        assertFalse(Files.exists(journal.getPath()));
+    }
+
+    @Test
+    public void resume_RecoveredJournal_AppendsAfterItsCommits() throws IOException {
+        EditJournal journal = createJournal();
+        journal.reset(null);
+        journal.append(0, 0, "before");
+        journal.flush();
+        Files.write(journal.getPath(), new byte[]{'E', 0}, StandardOpenOption.APPEND);
+
+        EditJournal resumed = EditJournal.resume(EditJournal.recover(journal.getPath()));
+        resumed.append(6, 0, " crash");
+        resumed.flush();
+
+        assertEquals("before crash", EditJournal.recover(resumed.getPath()).getText());
+
+        resumed.close();
+        assertFalse(Files.exists(resumed.getPath()));
+    }
+}
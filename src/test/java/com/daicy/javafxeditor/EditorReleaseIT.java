@@ -0,0 +1,114 @@
+package com.daicy.javafxeditor;
+
+import java.util.concurrent.Callable;
+
+import javafx.scene.Scene;
+import javafx.scene.layout.StackPane;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+import org.fxmisc.richtext.CodeArea;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Releasing the editor of a hidden document and restoring it, headless on Monocle: the document
+ * must come back as it was left - same text, caret and scroll position, still modified.
+ * <p>
+ * Run with mvn -Ptyping-latency verify.
+ */
+public class EditorReleaseIT {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static Stage stage;
+    private static StackPane root;
+
+    @BeforeAll
+    public static void showStage() throws Exception {
+        HeadlessToolkit.start();
+
+        callOnFxThread(() -> {
+            root = new StackPane();
+            stage = new Stage();
+            stage.setScene(new Scene(root, 600, 400));
+            stage.show();
+            return null;
+        });
+    }
+
+    @AfterAll
+    public static void hideStage() throws Exception {
+        callOnFxThread(() -> {
+            stage.hide();
+            return null;
+        });
+    }
+
+    @Test
+    public void restoreEditor_ReleasedModifiedDocument_RestoresTextCaretAndScroll() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        int topParagraph = 200;
+        int caretPosition = text.indexOf("line 210") + 3;
+
+        JavaFxWorkspace workspace = callOnFxThread(() -> {
+            JavaFxWorkspace newWorkspace = new JavaFxWorkspace(stage, new FileChooser(), StyledCodeEditor::new);
+            showEditor(newWorkspace.getCodeEditor());
+            newWorkspace.codeEditorProperty().addListener((observable, oldValue, newValue) -> showEditor(newValue));
+
+            CodeArea editor = newWorkspace.getCodeEditor();
+            editor.replaceText(text.toString());
+            editor.moveTo(caretPosition);
+            editor.showParagraphAtTop(topParagraph);
+            return newWorkspace;
+        });
+        waitUntil(() -> isShownFrom(workspace.getCodeEditor(), topParagraph));
+
+        callOnFxThread(() -> {
+            assertTrue(workspace.isModified());
+            workspace.releaseEditor();
+            assertTrue(workspace.isEditorReleased());
+            assertTrue(workspace.isModified());
+
+            workspace.restoreEditor();
+            return null;
+        });
+        waitUntil(() -> isShownFrom(workspace.getCodeEditor(), topParagraph));
+
+        callOnFxThread(() -> {
+            CodeArea editor = workspace.getCodeEditor();
+            assertEquals(text.toString(), editor.getText());
+            assertEquals(caretPosition, editor.getCaretPosition());
+            assertTrue(workspace.isModified());
+
+            workspace.dispose();
+            return null;
+        });
+    }
+
+    private static void showEditor(CodeArea editor) {
+        if (editor == null) {
+            root.getChildren().clear();
+        } else {
+            root.getChildren().setAll(editor);
+        }
+    }
+
+    private static boolean isShownFrom(CodeArea editor, int topParagraph) {
+        return editor != null && !editor.getVisibleParagraphs().isEmpty()
+                && editor.firstVisibleParToAllParIndex() == topParagraph;
+    }
+
+    private static <T> T callOnFxThread(Callable<T> callable) throws Exception {
+        return HeadlessToolkit.callOnFxThread(callable, TIMEOUT_SECONDS);
+    }
+
+    private static void waitUntil(Callable<Boolean> condition) throws Exception {
+        HeadlessToolkit.waitUntil(condition, TIMEOUT_SECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.daicy.javafxeditor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javafx.application.Platform;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The FX toolkit shared by the headless integration tests, which failsafe runs in the same JVM:
+ * it is started on Monocle by the first test class needing it, and never exited, since it
+ * cannot be started again afterwards.
+ */
+final class HeadlessToolkit {
+
+    private static final long STARTUP_TIMEOUT_SECONDS = 30;
+
+    private static boolean started = false;
+
+    private HeadlessToolkit() {
+    }
+
+    static synchronized void start() throws Exception {
+        if (started) {
+            return;
+        }
+
+        setDefaultProperty("glass.platform", "Monocle");
+        setDefaultProperty("monocle.platform", "Headless");
+        setDefaultProperty("prism.order", "sw");
+
+        CompletableFuture<Void> startup = new CompletableFuture<>();
+        try {
+            Platform.startup(() -> startup.complete(null));
+        } catch (IllegalStateException e) {
+            // Already started elsewhere in this JVM
+            startup.complete(null);
+        }
+        startup.get(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // Test classes close their windows: the toolkit must outlive them
+        Platform.setImplicitExit(false);
+        started = true;
+    }
+
+    private static void setDefaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    static <T> T callOnFxThread(Callable<T> callable, long timeoutSeconds) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                result.complete(callable.call());
+            } catch (Exception | Error e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.get(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Polls a condition on the FX thread
+     */
+    static void waitUntil(Callable<Boolean> condition, long timeoutSeconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (!callOnFxThread(condition, timeoutSeconds)) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out after " + timeoutSeconds + " s");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HighlightCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private static StyledDocument<String, String, String> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, "", "", SegmentOps.styledTextOps());
+    }
+
+    private static HighlightSnapshot createSnapshot(int length) {
+        StyleSpans<Collection<String>> styleSpans = StyleSpans.singleton(Collections.singletonList("comment"), length);
+        return HighlightSnapshot.encode(1, styleSpans, new short[1], -1);
+    }
+
+    @Test
+    public void computeKey_SameTextAndRules_IsTheSame() {
+        String key = HighlightCache.computeKey(createDocument("first\nsecond"), 1);
+
+        assertEquals(key, HighlightCache.computeKey(createDocument("first\nsecond"), 1));
+        assertNotEquals(key, HighlightCache.computeKey(createDocument("first\nsecond"), 2));
+        assertNotEquals(key, HighlightCache.computeKey(createDocument("firsts\necond"), 1));
+    }
+
+    @Test
+    public void load_StoredStyles_ReturnsThem() throws IOException {
+        HighlightCache cache = new HighlightCache(directory.resolve("cache"), HighlightCache.DEFAULT_MAX_SIZE);
+        String key = HighlightCache.computeKey(createDocument("// comment"), 1);
+
+        assertTrue(cache.load(key).isEmpty());
+
+        cache.store(key, createSnapshot(10));
+        HighlightSnapshot snapshot = cache.load(key).orElseThrow();
+
+        assertEquals(10, snapshot.getLength());
+        assertEquals(StyleSpans.singleton(Collections.singletonList("comment"), 10), snapshot.decode().getStyleSpans());
+    }
+
+    @Test
+    public void store_BeyondTheMaximumSize_EvictsTheLeastRecentlyUsed() throws IOException {
+        HighlightCache cache = new HighlightCache(directory, 40);
+        cache.store("first", createSnapshot(1));
+        Files.setLastModifiedTime(directory.resolve("first.styles"), FileTime.fromMillis(1000));
+        cache.store("second", createSnapshot(2));
+
+        assertTrue(cache.load("first").isEmpty());
+        assertTrue(cache.load("second").isPresent());
+    }
+
+    @Test
+    public void store_UsedEntry_IsKept() throws IOException {
+        HighlightCache cache = new HighlightCache(directory, 80);
+        cache.store("first", createSnapshot(1));
+        cache.store("second", createSnapshot(2));
+        Files.setLastModifiedTime(directory.resolve("first.styles"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("second.styles"), FileTime.fromMillis(2000));
+
+        cache.load("first");
+        cache.store("third", createSnapshot(3));
+
+        assertTrue(cache.load("first").isPresent());
+        assertTrue(cache.load("second").isEmpty());
+        assertTrue(cache.load("third").isPresent());
+    }
+
+    @Test
+    public void load_CorruptedEntry_DeletesIt() throws IOException {
+        HighlightCache cache = new HighlightCache(directory, HighlightCache.DEFAULT_MAX_SIZE);
+        Files.write(directory.resolve("broken.styles"), new byte[]{1, 2, 3});
+
+        assertTrue(cache.load("broken").isEmpty());
+        assertFalse(Files.exists(directory.resolve("broken.styles")));
+    }
+}
@@ -0,0 +1,70 @@
+package com.daicy.javafxeditor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HighlightSnapshotTest {
+
+    private static StyleSpans<Collection<String>> createStyleSpans() {
+        StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+        builder.add(Collections.singletonList("keyword"), 6);
+        builder.add(Collections.emptyList(), 1);
+        builder.add(Collections.singletonList("comment"), 20);
+        builder.add(Collections.emptyList(), 3);
+        builder.add(Collections.singletonList("keyword"), 6);
+        return builder.create();
+    }
+
+    @Test
+    public void decode_EncodedSnapshot_ReturnsTheSameStyles() throws IOException {
+        StyleSpans<Collection<String>> styleSpans = createStyleSpans();
+        short[] paragraphStates = {ParagraphStates.CLEAN, ParagraphStates.insideToken(1), ParagraphStates.insideToken(1), ParagraphStates.CLEAN};
+
+        HighlightSnapshot snapshot = HighlightSnapshot.encode(42, styleSpans, paragraphStates, 2);
+        HighlightSnapshot.Contents contents = snapshot.decode();
+
+        assertEquals(42, snapshot.getRulesHash());
+        assertEquals(36, snapshot.getLength());
+        assertEquals(4, snapshot.getParagraphCount());
+        assertEquals(styleSpans, contents.getStyleSpans());
+        assertArrayEquals(paragraphStates, contents.getParagraphStates());
+        assertEquals(2, contents.getUnterminatedParagraph());
+    }
+
+    @Test
+    public void read_WrittenSnapshot_ReturnsTheSameSnapshot() throws IOException {
+        short[] paragraphStates = new short[1000];
+        HighlightSnapshot snapshot = HighlightSnapshot.encode(-7, createStyleSpans(), paragraphStates, -1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.write(output);
+        HighlightSnapshot readSnapshot = HighlightSnapshot.read(ByteBuffer.wrap(output.toByteArray()));
+
+        assertEquals(-7, readSnapshot.getRulesHash());
+        assertEquals(createStyleSpans(), readSnapshot.decode().getStyleSpans());
+        assertEquals(-1, readSnapshot.decode().getUnterminatedParagraph());
+        // Equal states take a single run
+        assertTrue(snapshot.getEncodedSize() < 40);
+    }
+
+    @Test
+    public void read_TruncatedSnapshot_Fails() {
+        HighlightSnapshot snapshot = HighlightSnapshot.encode(0, createStyleSpans(), new short[2], -1);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.write(output);
+        byte[] bytes = output.toByteArray();
+
+        assertThrows(IOException.class, () -> HighlightSnapshot.read(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 3))));
+    }
+}
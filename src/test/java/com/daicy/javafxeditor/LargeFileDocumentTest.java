@@ -0,0 +1,66 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LargeFileDocumentTest {
+
+    @TempDir
+    Path directory;
+
+    private LargeFileDocument openIndexed(String text) throws IOException {
+        Path file = directory.resolve("large.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+
+        LargeFileDocument document = new LargeFileDocument(file, StandardCharsets.UTF_8);
+        document.indexLines(scannedBytes -> {
+        }, () -> false);
+        return document;
+    }
+
+    @Test
+    public void getLine_ManyLines_ReturnsEachLineInAnyOrder() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int lines = LargeFileDocument.LINE_INDEX_INTERVAL * 3 + 17;
+        for (int i = 0; i < lines; i++) {
+            text.append("line ").append(i).append(" è\n");
+        }
+
+        try (LargeFileDocument document = openIndexed(text.toString())) {
+            assertTrue(document.isIndexed());
+            assertEquals(lines + 1, document.getLineCount());
+
+            for (int line : new int[]{lines - 1, 0, 300, 301, 299, LargeFileDocument.LINE_INDEX_INTERVAL, 5}) {
+                assertEquals("line " + line + " è", document.getLine(line));
+            }
+            assertEquals("", document.getLine(lines));
+        }
+    }
+
+    @Test
+    public void getLine_WindowsTerminators_AreStripped() throws IOException {
+        try (LargeFileDocument document = openIndexed("first\r\nsecond\r\nthird")) {
+            assertEquals(3, document.getLineCount());
+            assertEquals("first", document.getLine(0));
+            assertEquals("second", document.getLine(1));
+            assertEquals("third", document.getLine(2));
+        }
+    }
+
+    @Test
+    public void getLine_VeryLongLine_IsTruncated() throws IOException {
+        String longLine = "x".repeat(LargeFileDocument.MAX_LINE_BYTES * 2);
+
+        try (LargeFileDocument document = openIndexed(longLine + "\nnext")) {
+            assertEquals(LargeFileDocument.MAX_LINE_BYTES, document.getLine(0).length());
+            assertEquals("next", document.getLine(1));
+        }
+    }
+}
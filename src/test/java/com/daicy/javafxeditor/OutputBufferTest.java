@@ -0,0 +1,78 @@
+package com.daicy.javafxeditor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputBufferTest {
+
+    @Test
+    public void takeNewText_AfterPreviousTake_ReturnsOnlyNewText() {
+        OutputBuffer buffer = new OutputBuffer(10);
+
+        buffer.append("first\nsec");
+        assertEquals("first\nsec", buffer.takeNewText());
+
+        buffer.append("ond\nthird\n");
+        assertEquals("ond\nthird\n", buffer.takeNewText());
+        assertEquals("", buffer.takeNewText());
+    }
+
+    @Test
+    public void takeNewText_UndeliveredLinesDropped_ReturnsTruncationMarker() {
+        OutputBuffer buffer = new OutputBuffer(2);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.append("line " + i + "\n");
+        }
+
+        assertEquals("[... 3 lines truncated ...]\nline 3\nline 4\n", buffer.takeNewText());
+        assertEquals(3, buffer.getTruncatedLines());
+    }
+
+    @Test
+    public void takeNewText_PartiallyDeliveredLineDropped_TerminatesIt() {
+        OutputBuffer buffer = new OutputBuffer(1);
+
+        buffer.append("open");
+        assertEquals("open", buffer.takeNewText());
+
+        buffer.append(" line\nnext\nlast\n");
+        assertEquals("\n[... 1 line truncated ...]\nlast\n", buffer.takeNewText());
+    }
+
+    @Test
+    public void append_WithoutLineBreaks_SplitsLinesAtMaxLength() {
+        OutputBuffer buffer = new OutputBuffer(10, 4, null);
+
+        buffer.append("abc");
+        assertEquals("abc", buffer.takeNewText());
+
+        buffer.append("defghijklmnopqrstu");
+        assertEquals("d\nefgh\nijkl\nmnop\nqrst\nu", buffer.takeNewText());
+
+        // The split lines are bounded as any other: only the latest 10 are retained
+        buffer.append("v".repeat(100));
+        assertEquals("\n[... 14 lines truncated ...]\n" + "vvvv\n".repeat(10) + "v", buffer.takeNewText());
+    }
+
+    @Test
+    public void append_LineOfMaxLength_IsNotSplit() {
+        OutputBuffer buffer = new OutputBuffer(10, 4, null);
+
+        buffer.append("abcd\nefg\n");
+        assertEquals("abcd\nefg\n", buffer.takeNewText());
+
+        buffer.append("hi");
+        buffer.append("jk\n");
+        assertEquals("hijk\n", buffer.takeNewText());
+    }
+
+    @Test
+    public void append_LineLongerThanMaxLength_IsSplitOnce() {
+        OutputBuffer buffer = new OutputBuffer(10, 4, null);
+
+        buffer.append("abcde\nfg\n");
+        assertEquals("abcd\ne\nfg\n", buffer.takeNewText());
+    }
+}
@@ -0,0 +1,51 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void append_ThroughBoundedBuffer_KeepsDroppedLines() throws IOException {
+        Path logPath = directory.resolve("run.log");
+        StringBuilder expectedText = new StringBuilder();
+
+        try (OutputLog log = OutputLog.create(logPath, StandardCharsets.UTF_8)) {
+            OutputBuffer outputBuffer = new OutputBuffer(3, log);
+            for (int i = 0; i < 20_000; i++) {
+                String line = "line " + i + " è\n";
+                outputBuffer.append(line);
+                expectedText.append(line);
+            }
+            outputBuffer.append("unterminated");
+            outputBuffer.endLine();
+            expectedText.append("unterminated\n");
+        }
+
+        assertEquals(expectedText.toString(), Files.readString(logPath, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void copyTo_TemporaryLog_CopiesItAndDeletesOnlyTheLog() throws IOException {
+        OutputLog log = OutputLog.createTemporary(StandardCharsets.UTF_8);
+        log.append("some output\n");
+        log.close();
+
+        Path target = directory.resolve("saved.txt");
+        log.copyTo(target);
+        log.delete();
+
+        assertEquals("some output\n", Files.readString(target));
+        assertFalse(Files.exists(log.getPath()));
+    }
+}
@@ -0,0 +1,49 @@
+package com.daicy.javafxeditor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParagraphStatesTest {
+
+    private static ParagraphStates createStates(short... states) {
+        ParagraphStates result = new ParagraphStates();
+        result.reset(states.length);
+        result.set(0, states, states.length);
+        return result;
+    }
+
+    @Test
+    public void edit_InsertedLines_ShiftsFollowingStates() {
+        ParagraphStates states = createStates(ParagraphStates.CLEAN, ParagraphStates.insideToken(0), ParagraphStates.CLEAN);
+
+        states.edit(0, 0, 2);
+
+        assertEquals(5, states.size());
+        assertEquals(ParagraphStates.CLEAN, states.get(0));
+        assertEquals(ParagraphStates.UNKNOWN, states.get(1));
+        assertEquals(ParagraphStates.UNKNOWN, states.get(2));
+        assertEquals(ParagraphStates.insideToken(0), states.get(3));
+        assertEquals(ParagraphStates.CLEAN, states.get(4));
+    }
+
+    @Test
+    public void edit_RemovedLines_DropsTheirStates() {
+        ParagraphStates states = createStates(ParagraphStates.CLEAN, ParagraphStates.insideToken(0), ParagraphStates.insideToken(1), ParagraphStates.CLEAN);
+
+        states.edit(0, 2, 0);
+
+        assertEquals(2, states.size());
+        assertEquals(ParagraphStates.CLEAN, states.get(0));
+        assertEquals(ParagraphStates.CLEAN, states.get(1));
+    }
+
+    @Test
+    public void findRestartParagraph_InsideToken_ReturnsTokenStart() {
+        ParagraphStates states = createStates(ParagraphStates.CLEAN, ParagraphStates.CLEAN, ParagraphStates.insideToken(0), ParagraphStates.UNKNOWN, ParagraphStates.CLEAN);
+
+        assertEquals(1, states.findRestartParagraph(3));
+        assertEquals(4, states.findRestartParagraph(4));
+        assertEquals(0, states.findRestartParagraph(0));
+    }
+}
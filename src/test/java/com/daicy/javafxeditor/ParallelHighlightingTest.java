@@ -0,0 +1,126 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The parallel pass must give exactly the styles and paragraph states of the sequential one:
+ * chunks of a few paragraphs make multi-line tokens cross their boundaries in every way.
+ */
+public class ParallelHighlightingTest {
+
+    private static final SyntaxLexer LEXER = new SyntaxLexer(Arrays.asList(
+            new Style("comment", "/\\*[\\s\\S]*?\\*/"),
+            new Style("comment", "//[^\\n]*"),
+            new Style("string", "\"\"\"[\\s\\S]*?\"\"\""),
+            new Style("string", "\"[^\"\\n]*\""),
+            Style.ofTokens("keyword", "int", "class", "return")
+    ));
+
+    private static ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> createDocument(String text) {
+        return ReadOnlyStyledDocument.fromString(text, Collections.emptyList(), Collections.emptyList(), SegmentOps.styledTextOps());
+    }
+
+    /**
+     * @return the styled runs, adjacent runs of the same style merged
+     */
+    private static List<String> describe(StyleSpans<Collection<String>> styleSpans) {
+        List<String> runs = new ArrayList<>();
+        if (styleSpans == null) {
+            return runs;
+        }
+
+        Collection<String> style = null;
+        int length = 0;
+        for (StyleSpan<Collection<String>> span : styleSpans) {
+            if (span.getLength() == 0) {
+                continue;
+            }
+            if (span.getStyle().equals(style)) {
+                length += span.getLength();
+            } else {
+                if (style != null) {
+                    runs.add(style + ":" + length);
+                }
+                style = span.getStyle();
+                length = span.getLength();
+            }
+        }
+        if (style != null) {
+            runs.add(style + ":" + length);
+        }
+
+        return runs;
+    }
+
+    private static void assertParallelMatchesSequential(String text, int chunkParagraphs) {
+        ReadOnlyStyledDocument<Collection<String>, String, Collection<String>> document = createDocument(text);
+
+        HighlightSnapshot.Contents sequential = StyledCodeEditor.lexDocument(document, LEXER, 0);
+        HighlightSnapshot.Contents parallel = StyledCodeEditor.lexDocument(document, LEXER, chunkParagraphs);
+
+        String message = "chunks of " + chunkParagraphs + " paragraphs: " + text;
+        assertEquals(describe(sequential.getStyleSpans()), describe(parallel.getStyleSpans()), message);
+        assertArrayEquals(sequential.getParagraphStates(), parallel.getParagraphStates(), message);
+        assertEquals(sequential.getUnterminatedParagraph(), parallel.getUnterminatedParagraph(), message);
+    }
+
+    private static String lines(String... lines) {
+        return String.join("\n", lines);
+    }
+
+    @Test
+    public void lexDocument_ChunkStartingInsideComment_MatchesSequentialPass() {
+        String text = lines("int a;", "/* open", "still", "comment", "closed */ int b;", "int c;", "return;", "class X");
+
+        // The second chunk starts on "comment", inside the block comment
+        assertParallelMatchesSequential(text, 3);
+    }
+
+    @Test
+    public void lexDocument_TextBlockSpanningSeveralChunks_MatchesSequentialPass() {
+        String text = lines("class X", "\"\"\"", "int", "/* not a comment", "return", "int", "\"\"\" int y;", "// int", "return;");
+
+        assertParallelMatchesSequential(text, 2);
+    }
+
+    @Test
+    public void lexDocument_TokenClosingOnChunkBoundary_MatchesSequentialPass() {
+        // Closing at the end of the chunk's last paragraph, then at the start of the next chunk
+        assertParallelMatchesSequential(lines("/* a", "b", "c */", "int x;", "int y;", "class Z"), 3);
+        assertParallelMatchesSequential(lines("/* a", "b", "c", "*/ int x;", "int y;", "class Z"), 3);
+    }
+
+    @Test
+    public void lexDocument_UnterminatedToken_MatchesSequentialPass() {
+        assertParallelMatchesSequential(lines("int a;", "int b;", "/* never", "closed", "int c;", "int d;"), 2);
+    }
+
+    @Test
+    public void lexDocument_RandomText_MatchesSequentialPass() {
+        String[] fragments = {"/*", "*/", "\"\"\"", "\"", "//", "\n", "\n", "\n", "int ", "class", "x", " "};
+        Random random = new Random(3);
+
+        for (int round = 0; round < 2000; round++) {
+            StringBuilder text = new StringBuilder();
+            int fragmentCount = random.nextInt(80);
+            for (int i = 0; i < fragmentCount; i++) {
+                text.append(fragments[random.nextInt(fragments.length)]);
+            }
+
+            assertParallelMatchesSequential(text.toString(), 1 + random.nextInt(4));
+        }
+    }
+}
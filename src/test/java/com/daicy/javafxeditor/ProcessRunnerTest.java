@@ -0,0 +1,35 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessRunnerTest {
+
+    private static final String JAVA_COMMAND = ProcessHandle.current().info().command().orElse("java");
+
+    @Test
+    public void start_ProcessPrintingToStandardError_CapturesOutputAndExitCode() throws Exception {
+        OutputBuffer outputBuffer = new OutputBuffer(1000);
+
+        ProcessRunner runner = ProcessRunner.start(List.of(JAVA_COMMAND, "-version"), new File("."), outputBuffer);
+        int exitCode = runner.exitCodeFuture().get(30, TimeUnit.SECONDS);
+
+        assertEquals(0, exitCode);
+        assertTrue(outputBuffer.takeNewText().contains("version"));
+    }
+
+    @Test
+    public void start_InvalidArguments_ReportsNonZeroExitCode() throws Exception {
+        OutputBuffer outputBuffer = new OutputBuffer(1000);
+
+        ProcessRunner runner = ProcessRunner.start(List.of(JAVA_COMMAND, "-no-such-option"), new File("."), outputBuffer);
+
+        assertNotEquals(0, runner.exitCodeFuture().get(30, TimeUnit.SECONDS));
+        assertFalse(runner.isStopRequested());
+    }
+}
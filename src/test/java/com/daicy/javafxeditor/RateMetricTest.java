@@ -0,0 +1,43 @@
+package com.daicy.javafxeditor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateMetricTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void getRate_AmountsOverCompleteSeconds_AveragesThemOverTheWindow() {
+        RateMetric rate = new RateMetric();
+        for (int second = 100; second < 110; second++) {
+            rate.record(30, second * SECOND);
+            rate.record(20, second * SECOND + SECOND / 2);
+        }
+
+        assertEquals(50, rate.getRate(110 * SECOND), 1e-9);
+        assertEquals(500, rate.getTotal());
+    }
+
+    @Test
+    public void getRate_CurrentSecond_IsNotCountedYet() {
+        RateMetric rate = new RateMetric();
+        rate.record(100, 100 * SECOND);
+
+        assertEquals(0, rate.getRate(100 * SECOND), 1e-9);
+        assertEquals(10, rate.getRate(101 * SECOND), 1e-9);
+    }
+
+    @Test
+    public void getRate_OldAmounts_AreForgotten() {
+        RateMetric rate = new RateMetric();
+        rate.record(100, 100 * SECOND);
+        rate.record(10, 120 * SECOND);
+
+        assertEquals(0, rate.getRate(120 * SECOND), 1e-9);
+        assertEquals(1, rate.getRate(121 * SECOND), 1e-9);
+    }
+}
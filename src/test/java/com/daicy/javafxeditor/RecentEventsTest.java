@@ -0,0 +1,41 @@
+package com.daicy.javafxeditor;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecentEventsTest {
+
+    @Test
+    public void format_MoreEventsThanCapacity_KeepsTheLatestOldestFirst() {
+        RecentEvents events = new RecentEvents(3);
+        for (int i = 1; i <= 5; i++) {
+            events.add("Event " + i, 0);
+        }
+
+        List<String> lines = events.format();
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith(" Event 3"));
+        assertTrue(lines.get(2).endsWith(" Event 5"));
+    }
+
+    @Test
+    public void add_ConsecutiveIdenticalEvents_CollapsesThem() {
+        RecentEvents events = new RecentEvents(3);
+        events.add("Typing", 0);
+        events.add("Typing", 1);
+        events.add("Typing", 2);
+        events.add("Save", 3);
+        events.add("Typing", 4);
+
+        List<String> lines = events.format();
+
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith(" Typing (x3)"));
+        assertTrue(lines.get(1).endsWith(" Save"));
+        assertTrue(lines.get(2).endsWith(" Typing"));
+    }
+}
@@ -0,0 +1,39 @@
+package com.daicy.javafxeditor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RotatingLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void append_BeyondMaxSize_RotatesAndDeletesTheOldestFile() throws IOException {
+        RotatingLog log = new RotatingLog(directory.resolve("logs").resolve("stalls.log"), 10, 3);
+        for (int i = 1; i <= 4; i++) {
+            log.append("entry " + i + "\n");
+        }
+
+        assertEquals("entry 4\n", Files.readString(log.getFile()));
+        assertEquals("entry 3\n", Files.readString(log.getRotatedFile(1)));
+        assertEquals("entry 2\n", Files.readString(log.getRotatedFile(2)));
+        assertFalse(Files.exists(log.getRotatedFile(3)));
+    }
+
+    @Test
+    public void append_WithinMaxSize_AppendsToTheSameFile() throws IOException {
+        RotatingLog log = new RotatingLog(directory.resolve("stalls.log"), 100, 3);
+        log.append("entry 1\n");
+        log.append("entry 2\n");
+
+        assertEquals("entry 1\nentry 2\n", Files.readString(log.getFile()));
+        assertFalse(Files.exists(log.getRotatedFile(1)));
+    }
+}
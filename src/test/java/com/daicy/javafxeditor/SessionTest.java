@@ -0,0 +1,78 @@
+package com.daicy.javafxeditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void load_SavedSession_RestoresTheDocumentsWithFiles() throws IOException {
+        File styledFile = directory.resolve("Styled.java").toFile();
+        Files.writeString(styledFile.toPath(), "class Styled {}");
+        File modifiedFile = directory.resolve("Modified.java").toFile();
+
+        StyleSpans<Collection<String>> styleSpans = new StyleSpansBuilder<Collection<String>>()
+                .add(Collections.singletonList("keyword"), 5)
+                .add(Collections.emptyList(), 10)
+                .create();
+        HighlightSnapshot highlighting = HighlightSnapshot.encode(1, styleSpans, new short[1], -1);
+
+        Session session = new Session(List.of(
+                new DocumentDescriptor(null, 0, 0, "untitled"),
+                new DocumentDescriptor(styledFile, 3, 0, null, styledFile.length(), styledFile.lastModified(), highlighting),
+                new DocumentDescriptor(modifiedFile, 7, 2, "unsaved", 10, 20, null)
+        ), 2);
+        session.save(directory.resolve("session.bin"));
+
+        Session loadedSession = Session.load(directory.resolve("session.bin")).orElseThrow();
+
+        assertEquals(1, loadedSession.getSelectedIndex());
+        assertEquals(2, loadedSession.getDocuments().size());
+
+        DocumentDescriptor styledDocument = loadedSession.getDocuments().get(0);
+        assertEquals(styledFile.getAbsoluteFile(), styledDocument.getFileOptional().orElseThrow());
+        assertEquals(3, styledDocument.getCaretPosition());
+        assertEquals(styleSpans, styledDocument.getValidHighlightingOptional().orElseThrow().decode().getStyleSpans());
+
+        DocumentDescriptor modifiedDocument = loadedSession.getDocuments().get(1);
+        assertFalse(modifiedDocument.isModified());
+        assertEquals(7, modifiedDocument.getCaretPosition());
+        assertEquals(2, modifiedDocument.getTopParagraph());
+        assertTrue(modifiedDocument.getHighlightingOptional().isEmpty());
+    }
+
+    @Test
+    public void getValidHighlightingOptional_FileChanged_IsEmpty() throws IOException {
+        File file = directory.resolve("Test.java").toFile();
+        Files.writeString(file.toPath(), "class Test {}");
+
+        StyleSpans<Collection<String>> styleSpans = StyleSpans.singleton(Collections.emptyList(), 13);
+        DocumentDescriptor document = new DocumentDescriptor(file, 0, 0, null, file.length(), file.lastModified(),
+                HighlightSnapshot.encode(1, styleSpans, new short[1], -1));
+        assertTrue(document.getValidHighlightingOptional().isPresent());
+
+        Files.writeString(file.toPath(), "class Other {}");
+
+        assertTrue(document.getValidHighlightingOptional().isEmpty());
+    }
+
+    @Test
+    public void load_MissingSession_IsEmpty() throws IOException {
+        assertTrue(Session.load(directory.resolve("session.bin")).isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package com.daicy.javafxeditor;
+
+import java.util.List;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StyleSpansDiffTest {
+
+    private static StyleSpans<String> createSpans(Object... stylesAndLengths) {
+        StyleSpansBuilder<String> builder = new StyleSpansBuilder<>();
+        for (int i = 0; i < stylesAndLengths.length; i += 2) {
+            builder.add((String) stylesAndLengths[i], (Integer) stylesAndLengths[i + 1]);
+        }
+        return builder.create();
+    }
+
+    @Test
+    public void diff_SameStylesSplitDifferently_ReturnsNoPatches() {
+        StyleSpans<String> oldSpans = createSpans("", 3, "", 2, "keyword", 4);
+        StyleSpans<String> newSpans = createSpans("", 5, "keyword", 1, "keyword", 3);
+
+        assertTrue(StyleSpansDiff.diff(oldSpans, newSpans, 0).isEmpty());
+    }
+
+    @Test
+    public void diff_OneTokenChanged_ReturnsOnlyThatToken() {
+        StyleSpans<String> oldSpans = createSpans("", 10, "keyword", 3, "", 10);
+        StyleSpans<String> newSpans = createSpans("", 10, "comment", 3, "", 10);
+
+        List<StyleSpansDiff.Patch<String>> patches = StyleSpansDiff.diff(oldSpans, newSpans, 0);
+
+        assertEquals(1, patches.size());
+        assertEquals(10, patches.get(0).getOffset());
+        assertEquals(3, patches.get(0).getStyleSpans().length());
+        assertEquals("comment", patches.get(0).getStyleSpans().getStyleSpan(0).getStyle());
+    }
+
+    @Test
+    public void diff_CloseChanges_AreMerged() {
+        StyleSpans<String> oldSpans = createSpans("a", 2, "", 4, "a", 2, "", 20, "a", 2);
+        StyleSpans<String> newSpans = createSpans("b", 2, "", 4, "b", 2, "", 20, "b", 2);
+
+        List<StyleSpansDiff.Patch<String>> patches = StyleSpansDiff.diff(oldSpans, newSpans, 5);
+
+        assertEquals(2, patches.size());
+        assertEquals(0, patches.get(0).getOffset());
+        assertEquals(8, patches.get(0).getStyleSpans().length());
+        assertEquals(28, patches.get(1).getOffset());
+        assertEquals(2, patches.get(1).getStyleSpans().length());
+    }
+}
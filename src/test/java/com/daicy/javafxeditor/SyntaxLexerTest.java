@@ -0,0 +1,158 @@
+package com.daicy.javafxeditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyntaxLexerTest {
+
+    private static final List<Style> JAVA_STYLES = Arrays.asList(
+            new Style("comment", "/\\*[\\s\\S]*?\\*/"),
+            new Style("comment", "//[^\\n]*"),
+            new Style("string", "\"[^\"\\n]*\""),
+            new Style("keyword", "\\bint\\b|\\bclass\\b|\\breturn\\b|\\bif\\b"),
+            new Style("number", "\\b\\d+\\b"),
+            new Style("operator", "(?<=\\w)\\s*[+-]")
+    );
+
+    private static List<String> scan(SyntaxLexer lexer, String text) {
+        List<String> tokens = new ArrayList<>();
+
+        SyntaxLexer.Scanner scanner = lexer.scanner(text);
+        while (scanner.next()) {
+            tokens.add(scanner.getStyle().getCssClass() + "@" + scanner.getStart() + "-" + scanner.getEnd());
+        }
+
+        return tokens;
+    }
+
+    /**
+     * @return the tokens, each followed by whether the scanner hit the end
+     */
+    private static List<String> scanWithHitEnd(SyntaxLexer lexer, String text) {
+        List<String> tokens = new ArrayList<>();
+
+        SyntaxLexer.Scanner scanner = lexer.scanner(text);
+        while (scanner.next()) {
+            tokens.add(scanner.getStyle().getCssClass() + "@" + scanner.getStart() + "-" + scanner.getEnd() + (scanner.hitEnd() ? "$" : ""));
+        }
+        tokens.add(scanner.hitEnd() ? "$" : "");
+
+        return tokens;
+    }
+
+    private static List<String> scanWithAlternation(List<Style> styles, String text) {
+        StringBuilder patternString = new StringBuilder();
+        for (int i = 0; i < styles.size(); i++) {
+            if (i > 0) {
+                patternString.append("|");
+            }
+            patternString.append("(?<S").append(i).append(">").append(styles.get(i).getPattern()).append(")");
+        }
+
+        List<String> tokens = new ArrayList<>();
+
+        Matcher matcher = Pattern.compile(patternString.toString()).matcher(text);
+        while (matcher.find()) {
+            for (int i = 0; i < styles.size(); i++) {
+                if (matcher.group("S" + i) != null && matcher.end() > matcher.start()) {
+                    tokens.add(styles.get(i).getCssClass() + "@" + matcher.start() + "-" + matcher.end());
+                    break;
+                }
+            }
+        }
+
+        return tokens;
+    }
+
+    @Test
+    public void next_OverlappingPatterns_FirstRegisteredWins() {
+        SyntaxLexer numberFirst = new SyntaxLexer(Arrays.asList(new Style("number", "\\d+"), new Style("word", "\\w+")));
+        SyntaxLexer wordFirst = new SyntaxLexer(Arrays.asList(new Style("word", "\\w+"), new Style("number", "\\d+")));
+
+        assertEquals(Arrays.asList("number@0-2", "word@3-5"), scan(numberFirst, "42 ab"));
+        assertEquals(Arrays.asList("word@0-2", "word@3-5"), scan(wordFirst, "42 ab"));
+    }
+
+    @Test
+    public void getCandidates_WordBoundaryPattern_IncludesOnlyPossibleStarts() {
+        SyntaxLexer lexer = new SyntaxLexer(Arrays.asList(new Style("keyword", "\\bint\\b"), new Style("arrow", "\\b->")));
+
+        assertArrayEquals(new int[]{0}, lexer.getCandidates('i'));
+        assertArrayEquals(new int[]{1}, lexer.getCandidates('-'));
+        assertArrayEquals(new int[0], lexer.getCandidates(' '));
+        assertArrayEquals(new int[]{0, 1}, lexer.getCandidates('\u00e8'));
+    }
+
+    @Test
+    public void next_UnterminatedComment_HitsEnd() {
+        SyntaxLexer lexer = new SyntaxLexer(JAVA_STYLES);
+
+        SyntaxLexer.Scanner scanner = lexer.scanner("int a; /* open");
+        assertTrue(scanner.next());
+        assertFalse(scanner.hitEnd());
+        assertFalse(scanner.next());
+        assertTrue(scanner.hitEnd());
+    }
+
+    @Test
+    public void next_RandomText_MatchesAlternationRegex() {
+        String[] fragments = {"int ", "class", "/*", "*/", "//", "\"", "\n", "x", " ", "42", "+", "-", "return", "if", "\u00e8"};
+        SyntaxLexer lexer = new SyntaxLexer(JAVA_STYLES);
+        Random random = new Random(7);
+
+        for (int round = 0; round < 200; round++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 60; i++) {
+                text.append(fragments[random.nextInt(fragments.length)]);
+            }
+
+            assertEquals(scanWithAlternation(JAVA_STYLES, text.toString()), scan(lexer, text.toString()), text.toString());
+        }
+    }
+
+    @Test
+    public void next_TokenRule_MatchesWholeWordsOnly() {
+        SyntaxLexer lexer = new SyntaxLexer(Arrays.asList(Style.ofTokens("keyword", "int", "interface"), new Style("word", "\\w+")));
+
+        assertEquals(Arrays.asList("keyword@0-3", "word@4-8", "keyword@9-18", "word@19-23"), scan(lexer, "int into interface _int"));
+        assertArrayEquals(new int[]{0, 1}, lexer.getCandidates('i'));
+        assertArrayEquals(new int[]{1}, lexer.getCandidates('x'));
+    }
+
+    @Test
+    public void next_RandomText_TokenRulesMatchTheirPatterns() {
+        String[] fragments = {"int", "in", "interface", "er", "face", "_", "x", "2", " ", "//", "\n", "\u00e8", "t\u00e9", "\u0301", "."};
+        List<Style> tokenStyles = Arrays.asList(
+                new Style("comment", "//[^\\n]*"),
+                Style.ofTokens("keyword", "int", "interface", "in", "_x", "\u00e8t\u00e9", "x2"),
+                new Style("number", "\\b\\d+\\b"),
+                new Style("word", "\\w+")
+        );
+        List<Style> patternStyles = new ArrayList<>();
+        for (Style style : tokenStyles) {
+            patternStyles.add(new Style(style.getCssClass(), style.getPattern()));
+        }
+
+        SyntaxLexer tokenLexer = new SyntaxLexer(tokenStyles);
+        SyntaxLexer patternLexer = new SyntaxLexer(patternStyles);
+        Random random = new Random(11);
+
+        for (int round = 0; round < 500; round++) {
+            StringBuilder text = new StringBuilder();
+            int fragmentCount = random.nextInt(12);
+            for (int i = 0; i < fragmentCount; i++) {
+                text.append(fragments[random.nextInt(fragments.length)]);
+            }
+
+            assertEquals(scanWithHitEnd(patternLexer, text.toString()), scanWithHitEnd(tokenLexer, text.toString()), text.toString());
+        }
+    }
+}
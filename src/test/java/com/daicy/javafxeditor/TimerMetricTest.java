@@ -0,0 +1,48 @@
+package com.daicy.javafxeditor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimerMetricTest {
+
+    @Test
+    public void getBucket_Durations_FallIntoBucketsBoundingThem() {
+        for (long micros : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 1000, 123_456, 1L << 39}) {
+            int bucket = TimerMetric.getBucket(micros);
+
+            assertTrue(TimerMetric.getBucketUpperBound(bucket) >= micros, "Upper bound of " + micros);
+            assertTrue(bucket == 0 || TimerMetric.getBucketUpperBound(bucket - 1) < micros, "Previous bound of " + micros);
+        }
+    }
+
+    @Test
+    public void getStatistics_RecordedDurations_ReportsCountMeanAndMax() {
+        TimerMetric timer = new TimerMetric();
+        timer.record(TimeUnit.MILLISECONDS.toNanos(2));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(4));
+
+        TimerMetric.Statistics statistics = timer.getStatistics();
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(6, statistics.getTotalMillis(), 1e-9);
+        assertEquals(3, statistics.getMeanMillis(), 1e-9);
+        assertEquals(4, statistics.getMaxMillis(), 1e-9);
+    }
+
+    @Test
+    public void getPercentileNanos_ManyDurations_IsWithinTheBucketPrecision() {
+        TimerMetric timer = new TimerMetric();
+        for (int i = 1; i <= 1000; i++) {
+            timer.record(TimeUnit.MICROSECONDS.toNanos(i * 100L));
+        }
+
+        long p99 = timer.getPercentileNanos(0.99);
+
+        long expected = TimeUnit.MICROSECONDS.toNanos(99_000);
+        assertTrue(p99 >= expected && p99 <= expected * 1.125, "p99: " + p99);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100_000), timer.getPercentileNanos(1));
+    }
+}
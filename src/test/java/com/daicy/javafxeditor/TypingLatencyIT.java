@@ -0,0 +1,223 @@
+package com.daicy.javafxeditor;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javafx.application.Platform;
+import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
+import javafx.scene.robot.Robot;
+import javafx.stage.Stage;
+import org.fxmisc.richtext.CodeArea;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end typing latency, measured headless on Monocle: the editor is started as TestEditor
+ * does, with an EditorStrategy creating a StyledCodeEditor with Java rules, and keys are typed
+ * through the robot into documents of increasing size.
+ * <p>
+ * Each keystroke is timed up to two pulses: the first one where the edit is laid out, and the first
+ * one where the edited paragraph is also styled again - the latter includes the quiet period after
+ * typing. A document fails when the 99th percentile of either latency exceeds its budget.
+ * <p>
+ * Run with mvn -Ptyping-latency verify; sizes, keystroke counts and budgets are system properties.
+ */
+public class TypingLatencyIT {
+
+    private static final String[] SIZES = System.getProperty("typing.latency.sizes", "10KB,1MB,8MB").split(",");
+    private static final int WARMUP_KEYSTROKES = Integer.getInteger("typing.latency.warmupKeystrokes", 20);
+    private static final int KEYSTROKES = Integer.getInteger("typing.latency.keystrokes", 100);
+    private static final Duration STYLING_DELAY = Duration.ofMillis(Long.getLong("typing.latency.stylingDelay", 334));
+
+    private static final long EDIT_BUDGET_MILLIS = Long.getLong("typing.latency.editBudget", 150);
+    private static final long STYLED_BUDGET_MILLIS = Long.getLong("typing.latency.styledBudget", 600);
+
+    private static final long LOAD_TIMEOUT_SECONDS = 600;
+    private static final long KEYSTROKE_TIMEOUT_SECONDS = 30;
+
+    private static LatencyStrategy strategy;
+    private static Stage stage;
+    private static Robot robot;
+
+    @BeforeAll
+    public static void startEditor() throws Exception {
+        HeadlessToolkit.start();
+
+        callOnFxThread(() -> {
+            strategy = new LatencyStrategy();
+            stage = new Stage();
+            new JavaFxEditor(strategy).start(stage);
+            robot = new Robot();
+            return null;
+        });
+        waitUntil(() -> stage.isShowing() && strategy.editor != null && strategy.editor.getScene() != null, KEYSTROKE_TIMEOUT_SECONDS);
+    }
+
+    @AfterAll
+    public static void stopEditor() throws Exception {
+        callOnFxThread(() -> {
+            stage.hide();
+            return null;
+        });
+    }
+
+    @TestFactory
+    public Stream<DynamicTest> typing_DocumentsOfIncreasingSize_StaysWithinBudgets() {
+        return Arrays.stream(SIZES).map(size -> DynamicTest.dynamicTest(size, () -> measureTyping(size)));
+    }
+
+    private static void measureTyping(String size) throws Exception {
+        StyledCodeEditor editor = strategy.editor;
+        String text = BenchmarkDocuments.createJavaSource(BenchmarkDocuments.parseSize(size));
+        // Typing in front of a keyword, so that every keystroke restyles it
+        int editPosition = text.indexOf("public class", text.length() / 2);
+
+        callOnFxThread(() -> {
+            editor.replaceText(text);
+            editor.moveTo(editPosition);
+            editor.requestFollowCaret();
+            editor.requestFocus();
+            return null;
+        });
+        waitUntil(() -> !editor.isStylingPending(), LOAD_TIMEOUT_SECONDS);
+
+        for (int i = 0; i < WARMUP_KEYSTROKES; i++) {
+            typeKey(editor, i % 2 == 0 ? KeyCode.X : KeyCode.BACK_SPACE);
+        }
+
+        long[] editLatencies = new long[KEYSTROKES];
+        long[] styledLatencies = new long[KEYSTROKES];
+        for (int i = 0; i < KEYSTROKES; i++) {
+            long[] latencies = typeKey(editor, i % 2 == 0 ? KeyCode.X : KeyCode.BACK_SPACE);
+            editLatencies[i] = latencies[0];
+            styledLatencies[i] = latencies[1];
+        }
+        Arrays.sort(editLatencies);
+        Arrays.sort(styledLatencies);
+
+        System.out.printf("Typing latency, %s document: edit %s; styled %s%n",
+                size, formatPercentiles(editLatencies), formatPercentiles(styledLatencies));
+
+        assertAll(
+                () -> assertTrue(toMillis(percentile(editLatencies, 0.99)) <= EDIT_BUDGET_MILLIS,
+                        () -> size + ": edit p99 exceeds " + EDIT_BUDGET_MILLIS + " ms: " + formatPercentiles(editLatencies)),
+                () -> assertTrue(toMillis(percentile(styledLatencies, 0.99)) <= STYLED_BUDGET_MILLIS,
+                        () -> size + ": styled p99 exceeds " + STYLED_BUDGET_MILLIS + " ms: " + formatPercentiles(styledLatencies))
+        );
+    }
+
+    /**
+     * Types a key into the editor, then waits for the pulse painting the edit and for the pulse painting it styled
+     *
+     * @return the latencies of both pulses, in nanoseconds
+     */
+    private static long[] typeKey(StyledCodeEditor editor, KeyCode key) throws Exception {
+        CompletableFuture<long[]> result = new CompletableFuture<>();
+
+        Platform.runLater(() -> {
+            Scene scene = editor.getScene();
+            int initialLength = editor.getLength();
+            long[] latencies = {-1, -1};
+            long start = System.nanoTime();
+
+            scene.addPostLayoutPulseListener(new Runnable() {
+                @Override
+                public void run() {
+                    long now = System.nanoTime();
+                    if (latencies[0] < 0 && editor.getLength() != initialLength) {
+                        latencies[0] = now - start;
+                    }
+
+                    if (latencies[0] >= 0 && !editor.isStylingPending()) {
+                        latencies[1] = now - start;
+                        scene.removePostLayoutPulseListener(this);
+                        result.complete(latencies);
+                    } else {
+                        // Styling may leave the scene unchanged: pulses are not scheduled otherwise
+                        Platform.requestNextPulse();
+                    }
+                }
+            });
+
+            robot.keyType(key);
+        });
+
+        return result.get(KEYSTROKE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static long percentile(long[] sortedValues, double quantile) {
+        int index = (int) Math.ceil(quantile * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, index)];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String formatPercentiles(long[] sortedValues) {
+        return String.format("p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                toMillis(percentile(sortedValues, 0.5)),
+                toMillis(percentile(sortedValues, 0.9)),
+                toMillis(percentile(sortedValues, 0.99)),
+                toMillis(sortedValues[sortedValues.length - 1]));
+    }
+
+    private static <T> T callOnFxThread(Callable<T> callable) throws Exception {
+        return HeadlessToolkit.callOnFxThread(callable, LOAD_TIMEOUT_SECONDS);
+    }
+
+    private static void waitUntil(Callable<Boolean> condition, long timeoutSeconds) throws Exception {
+        HeadlessToolkit.waitUntil(condition, timeoutSeconds);
+    }
+
+    /**
+     * The strategy of the editor, without any state kept on disk between runs
+     */
+    private static final class LatencyStrategy extends EditorStrategy {
+
+        private volatile StyledCodeEditor editor;
+
+        @Override
+        public CodeArea createCodeEditor() {
+            StyledCodeEditor codeEditor = new StyledCodeEditor(STYLING_DELAY);
+            for (Style style : BenchmarkDocuments.createJavaStyles(50)) {
+                codeEditor.addPattern(style.getCssClass(), style.getPattern());
+            }
+            codeEditor.getUndoManager().forgetHistory();
+
+            editor = codeEditor;
+            return codeEditor;
+        }
+
+        @Override
+        public Optional<Path> getRecoveryDirectory() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Path> getSessionFile() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Path> getHighlightCacheDirectory() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Optional<Path> getDiagnosticsLogFile() {
+            return Optional.empty();
+        }
+    }
+}